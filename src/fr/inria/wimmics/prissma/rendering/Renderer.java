@@ -25,6 +25,8 @@ import java.io.File;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -41,6 +43,7 @@ import fr.inria.jfresnel.jena.FresnelJenaParser;
 import fr.inria.jfresnel.jena.JenaRenderer;
 import fr.inria.jfresnel.sparql.SPARQLNSResolver;
 import fr.inria.jfresnel.sparql.jena.SPARQLJenaEvaluator;
+import fr.inria.wimmics.prissma.selection.PrissmaConfig;
 import fr.inria.wimmics.prissma.selection.PrissmaProperties;
 
 
@@ -54,16 +57,32 @@ public class Renderer {
 	private FSLJenaEvaluator fje;
 	private SPARQLJenaEvaluator sje;
 	private  Logger LOG = LoggerFactory.getLogger(Renderer.class);
+	
+	// folder of the fresnel entities (e.g. the XSLT stylesheet)
+	private final String entitiesPath;
 
 	
 	
+	/**
+	 * Creates a renderer w/ the fresnel_folder property of config.properties, 
+	 * or PrissmaProperties.ENTITIES_PATH if there is none.
+	 */
 	public Renderer(){
+		this(null);
+	}
+	
+	
+	/**
+	 * @param entitiesPath folder of the fresnel entities, or null to read it from config.properties (see Renderer())
+	 */
+	public Renderer(String entitiesPath){
 		fnsr = new FSLNSResolver(); 
 		snsr = new SPARQLNSResolver();
 		fhs = new FSLJenaHierarchyStore();
 		fp = new FresnelJenaParser(fnsr, fhs);
 		fje = new FSLJenaEvaluator(fnsr, fhs); 
 		sje = new SPARQLJenaEvaluator(snsr);
+		this.entitiesPath = entitiesPath != null ? entitiesPath : loadEntitiesPath();
 	}
 	
 	public String renderHTML(Model prism, Model inputModel, boolean isTest){
@@ -84,7 +103,7 @@ public class Renderer {
 		if (isTest)
 			dir = PrissmaProperties.ENTITIES_PATH_TEST;
 		else
-			dir = PrissmaProperties.ENTITIES_PATH;
+			dir = entitiesPath;
 		File xsltFile = new File(dir + PrissmaProperties.FRESNEL_XSLT_HTML);
         Source xsltSource = new StreamSource(xsltFile);
         String html = "";
@@ -98,5 +117,24 @@ public class Renderer {
 	}
 	
 	
+	public String getEntitiesPath(){
+		return entitiesPath;
+	}
+	
+	
+	/**
+	 * Returns the fresnel_folder property of config.properties, or PrissmaProperties.ENTITIES_PATH if there is none.
+	 */
+	private String loadEntitiesPath(){
+		try {
+			String fresnelFolder = new PropertiesConfiguration(PrissmaConfig.DEFAULT_FILE).getString("fresnel_folder");
+			if (fresnelFolder != null)
+				return fresnelFolder;
+		} catch (ConfigurationException e) {
+			LOG.error("Error reading property file {}", e.getMessage());
+		}
+		return PrissmaProperties.ENTITIES_PATH;
+	}
+	
 	
 }
@@ -0,0 +1,112 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
+
+/**
+ * Context unit substitution costs shared by the searches of a batch (see SelectionEngine.searchBatch).
+ * The substitution cost of a decomposition context unit is computed once for all the equal input units
+ * of the batch contexts. Candidates are not shared: each search builds its own, 
+ * so that their edit operations refer to the units of its input context.
+ * A cache must only be used w/ a single decomposition and configuration.
+ */
+public class CtxUnitMatchCache {
+
+	private final ConcurrentHashMap<Key, Double> costs;
+	private final AtomicLong hits;
+	
+	
+	public CtxUnitMatchCache() {
+		this.costs = new ConcurrentHashMap<Key, Double>();
+		this.hits = new AtomicLong();
+	}
+	
+	
+	/**
+	 * @param itemId id of the decomposition context unit item
+	 * @param inputUnit
+	 * @return the cached substitution cost, or null
+	 */
+	Double get(int itemId, ContextUnit inputUnit){
+		Double cost = costs.get(new Key(itemId, inputUnit));
+		if (cost != null)
+			hits.incrementAndGet();
+		return cost;
+	}
+	
+	
+	/**
+	 * @param itemId id of the decomposition context unit item
+	 * @param inputUnit
+	 * @param cost substitution cost
+	 */
+	void put(int itemId, ContextUnit inputUnit, double cost){
+		costs.putIfAbsent(new Key(itemId, inputUnit), cost);
+	}
+	
+	
+	/**
+	 * Returns the number of cached substitution costs.
+	 */
+	public int size(){
+		return costs.size();
+	}
+	
+	
+	/**
+	 * Returns the number of substitutions whose cost was found in the cache.
+	 */
+	public long getHits(){
+		return hits.get();
+	}
+	
+	
+	private static class Key {
+		private final int itemId;
+		private final ContextUnit inputUnit;
+		private final int hash;
+		
+		private Key(int itemId, ContextUnit inputUnit) {
+			this.itemId = itemId;
+			this.inputUnit = inputUnit;
+			this.hash = 31 * itemId + inputUnit.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return itemId == other.itemId && hash == other.hash && inputUnit.equals(other.inputUnit);
+		}
+	}
+	
+}
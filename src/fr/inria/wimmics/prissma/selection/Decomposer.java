@@ -19,6 +19,9 @@
 
 package fr.inria.wimmics.prissma.selection;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -40,6 +43,7 @@ import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.rdf.model.SimpleSelector;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.util.FileManager;
 
 import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
 import fr.inria.wimmics.prissma.selection.entities.DecompItem;
@@ -48,6 +52,7 @@ import fr.inria.wimmics.prissma.selection.entities.Edge;
 import fr.inria.wimmics.prissma.selection.entities.Prism;
 import fr.inria.wimmics.prissma.selection.exceptions.CuttingEdgeException;
 import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+import fr.inria.wimmics.prissma.selection.utilities.DecompositionSnapshot;
 
 public class Decomposer {
 
@@ -65,6 +70,7 @@ public class Decomposer {
 	 * 1) Trim fresnel data from prism
 	 * 2) Substitute intermediate entities w/ their class
 	 * 3) Apply recursive decomp method
+	 * The prism is added to decomp, that may already contain other prisms.
 	 * 
 	 * @param model
 	 * @param decomp
@@ -77,6 +83,60 @@ public class Decomposer {
 		return decomp;
 	}
 	
+	
+	/**
+	 * Loads the decomposition from a snapshot (see DecompositionSnapshot).
+	 * If the snapshot cannot be read (e.g. missing, or written w/ another format version), 
+	 * decomposes all the prisms in prismPath and writes a new snapshot.
+	 * Snapshots are not checked against prisms: they must be deleted when prisms change.
+	 * @param snapshotFile
+	 * @param prismPath
+	 * @return
+	 */
+	public Decomposition loadDecomposition(File snapshotFile, String prismPath){
+		Decomposition decomp = DecompositionSnapshot.read(snapshotFile);
+		if (decomp != null)
+			return decomp;
+		
+		decomp = new Decomposition();
+		File[] files = new File(prismPath).listFiles();
+		if (files == null){
+			LOG.error("Prism folder not found: " + prismPath);
+			return decomp;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.getName().endsWith(".ttl")){
+				Model prismModel = ModelFactory.createDefaultModel();
+				InputStream in = FileManager.get().open(file.getPath());
+				if (in != null) {
+					prismModel.read(in, null, "TURTLE");
+					decomp = decompose(prismModel, decomp);
+				}
+			}
+		}
+		try {
+			DecompositionSnapshot.write(decomp, snapshotFile);
+		} catch (IOException e) {
+			LOG.error("Error writing decomposition snapshot: " + e.getMessage());
+		}
+		return decomp;
+	}
+	
+	
+	/**
+	 * Removes a prism from the decomposition, deleting the items that are not shared w/ other prisms.
+	 * Item ids are compacted (see Decomposition.removePrism).
+	 * @param prismURI
+	 * @param decomp
+	 * @return
+	 */
+	public Decomposition removePrism(URI prismURI, Decomposition decomp){
+		if (!decomp.removePrism(prismURI))
+			LOG.warn("Prism " + prismURI + " not found in decomposition.");
+		return decomp;
+	}
+	
 
 	
 
@@ -297,10 +357,8 @@ public class Decomposer {
 			RDFNode gMinusSmax, Edge e, URI prismURI) {
 
 		DecompItem gDecompItem = new DecompItem(decomp, g, sMax, gMinusSmax, e, prismURI);
-		if (!decomp.elements.contains(gDecompItem)){
-			decomp.elements.add(decomp.idCounter, gDecompItem);
-			decomp.idCounter ++;
-		}
+		if (!decomp.elements.contains(gDecompItem))
+			decomp.addItem(gDecompItem);
 		
 		return gDecompItem;
 		
@@ -414,46 +472,24 @@ public class Decomposer {
 
 	/**
 	 * Search decomposition for largest element sMax that is shared w/ input.
-	 * Uses jena triple-based subgraph procedure.
+	 * Uses jena triple-based subgraph procedure, on the items found by the decomposition containment index.
+	 * Ties are broken in favor of the first item.
 	 * @param decomp
 	 * @param g
 	 * @return
 	 */
 	private RDFNode searchSmax(Decomposition decomp, RDFNode g) {
-		RDFNode sMax = null;
+		DecompItem sMaxItem = null;
 		
-		for ( DecompItem element : decomp.elements) {
+		for (int id : decomp.getSubgraphItems(g)) {
+			DecompItem element = decomp.elements.get(id);
 			// size of decomp element is the # of context units that are contained in it.
-			RDFNode elementNode = decomp.getReconstructedModel(element);
-			if ( isSubgraphOfTripleBased(elementNode, g) &&
-				 (sMax == null || 
-				  getSize(sMax, decomp.substitutions.values()) < getSize(elementNode, decomp.substitutions.values()))
-				){
-				sMax = decomp.getReconstructedModel(element); 
-			}
+			if (sMaxItem == null || decomp.getItemSize(sMaxItem) < decomp.getItemSize(element))
+				sMaxItem = element;
 		}
-		return sMax;
-	}
-
-
-	/**
-	 * Returns the number of ctxUnit contained in a graph.
-	 * N.b: size != number of nodes (GEO ctx unit and TIME count as one even if they are
-	 * made of multiple nodes)
-	 * @param node
-	 * @return
-	 */
-	private long getSize(RDFNode node, Collection<String> RDFclasses) {
-		
-		Model model = node.getModel();
-		if (model != null){
-			ContextUnitConverter converter = new ContextUnitConverter();
-			converter.convertInputToUnits(node, RDFclasses);
-			return converter.inputGraphContextUnits.size();
-		}
-		else
-			// is ctxUnit
-			return 1;
+		if (sMaxItem == null)
+			return null;
+		return decomp.getReconstructedModel(sMaxItem);
 	}
 
 
@@ -655,19 +691,6 @@ public class Decomposer {
 
 
 
-	private boolean isSubgraphOfTripleBased(RDFNode gElement, RDFNode g) {
-		boolean result = false;
-		Model gElementModel = gElement.getModel(); 
-		// if decomp element is ctxUnit
-		if (gElementModel == null || gElementModel.isEmpty()){
-			result = g.getModel().containsResource(gElement);
-			return result;
-		}
-		// if decompelement not ctxunit
-		if (g.getModel().containsAll(gElement.getModel()))
-			result = true;
-		return result;
-	}
 	
 	
 }
@@ -21,31 +21,36 @@ package fr.inria.wimmics.prissma.selection;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 
 
 
 
-import org.apache.commons.configuration.Configuration;
-import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.PropertiesConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.ac.shef.wit.simmetrics.similaritymetrics.AbstractStringMetric;
-import uk.ac.shef.wit.simmetrics.similaritymetrics.Jaro;
-import uk.ac.shef.wit.simmetrics.similaritymetrics.JaroWinkler;
-import uk.ac.shef.wit.simmetrics.similaritymetrics.Levenshtein;
-import uk.ac.shef.wit.simmetrics.similaritymetrics.MongeElkan;
 
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
@@ -59,6 +64,7 @@ import edu.cmu.lti.ws4j.impl.Lin;
 import edu.cmu.lti.ws4j.impl.Path;
 import edu.cmu.lti.ws4j.impl.WuPalmer;
 import edu.cmu.lti.ws4j.util.WS4JConfiguration;
+import fr.inria.wimmics.prissma.selection.entities.CandidateQueue;
 import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
 import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
 import fr.inria.wimmics.prissma.selection.entities.DecompItem;
@@ -67,162 +73,303 @@ import fr.inria.wimmics.prissma.selection.entities.ETSubgraphIsomorphism;
 import fr.inria.wimmics.prissma.selection.entities.Edge;
 import fr.inria.wimmics.prissma.selection.entities.EditOperation;
 import fr.inria.wimmics.prissma.selection.entities.EditOperationType;
+import fr.inria.wimmics.prissma.selection.entities.PrismResult;
 import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
-import fr.inria.wimmics.prissma.selection.exceptions.ContextUnitException;
 import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+import fr.inria.wimmics.prissma.selection.utilities.GeoIndex;
+import fr.inria.wimmics.prissma.selection.utilities.IntervalIndex;
+import fr.inria.wimmics.prissma.selection.utilities.SemanticRelatedness;
+import fr.inria.wimmics.prissma.selection.utilities.SimilarityCache;
+import fr.inria.wimmics.prissma.selection.utilities.StringMetrics;
 
 public class Matcher {
 
 	public Decomposition decomp;	
 	public Set<URI> results;
+	// cost of the best candidate of each prism in results, in discovery order
+	public Map<URI, Double> resultCosts;
+	// number of candidates selected by the last search, i.e. its iterations
+	public int selectedCandidates;
 	
-	public Map<Integer,List<ETSubgraphIsomorphism>> candidates;
+	public CandidateQueue candidates;
 	public Map<Integer,List<ETSubgraphIsomorphism>> winners;
 	
 	
 	public Set<ContextUnit> inputGraphContextUnits;
 	public Set<Edge> inputGraphEdges;
+	// entity URI to class URI substitutions of the input graph, 
+	// if null those of the decomposition are used (see ContextUnitConverter.switchToClasses)
+	public Map<String, String> substitutions;
+	// input edges indexed by the instance ids of their (v1, v2) endpoints
+	private Map<Long, List<Edge>> inputGraphEdgesByEndpoints;
+	// input context units partitioned by type, ENTITY and CLASS units by URI
+	public Map<CtxUnitType, List<ContextUnit>> inputGraphContextUnitsByType;
+	public Map<String, ContextUnit> inputGraphEntitiesByURI;
+	public Map<String, ContextUnit> inputGraphClassesByURI;
+	// input units that may be within reach of each decomposition GEO and TIME unit, 
+	// for the types in reachIndexedTypes
+	private Map<Integer, List<ContextUnit>> reachableInputUnits;
+	private Set<CtxUnitType> reachIndexedTypes;
 	
 	private double currentMinCost;
 	
+	private final PrissmaConfig config;
+	
+	// context unit substitution costs shared w/ the other searches of a batch, if any
+	CtxUnitMatchCache matchCache;
+	// true in the sessions of a SelectionEngine: the decomposition is shared by concurrent searches, which only read it
+	boolean sharedDecomposition;
+	
 	
 	/** Semantic Similarity for Strings*/
 	private static ILexicalDatabase db = new NictWordNet();
     private static RelatednessCalculator lin = new Lin(db);
     private static RelatednessCalculator wup = new WuPalmer(db);
     private static RelatednessCalculator path = new Path(db);
+    static {
+    	// only the most frequent sense of each word is used
+    	WS4JConfiguration.getInstance().setMFS(true);
+    }
+	
 	
 	
+	/** String similarity scores, shared across searches, by cache size */
+	private static final ConcurrentMap<Integer, SimilarityCache> similarityCaches = new ConcurrentHashMap<Integer, SimilarityCache>();
+	
+	/** Relatedness of WordNet synset pairs, by semantic measure, shared across searches */
+	private static final int SYNSET_RELATEDNESS_CACHE_SIZE = 100000;
+	private static final SimilarityCache synsetRelatednessCache = new SimilarityCache(SYNSET_RELATEDNESS_CACHE_SIZE);
+	
+	/** 
+	 * The WordNet database (a single JDBC connection w/ shared statements, and a shared stemmer) 
+	 * is not meant for concurrent access: it is only read to resolve synsets, 
+	 * and to score the synset pairs missing from synsetRelatednessCache.
+	 */
+	private static final Object wordNetLock = new Object();
+	
+	/** Threads of the pool shared by the context unit matching phases of all the searches (see MatchingPool) */
+	private static final int MATCHING_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+	
 	
 	private  Logger LOG = LoggerFactory.getLogger(Matcher.class);
 	
 	
+	/**
+	 * Creates a matcher w/ the configuration read from config.properties (see PrissmaConfig.getDefault()).
+	 * @param decomp
+	 */
 	public Matcher(Decomposition decomp) {
+		this(decomp, PrissmaConfig.getDefault());
+	}
+	
+	
+	/**
+	 * @param decomp
+	 * @param config search parameters
+	 */
+	public Matcher(Decomposition decomp, PrissmaConfig config) {
 		if (decomp == null)
 			this.decomp = new Decomposition();
 		else
 			this.decomp = decomp;
+		if (config == null)
+			this.config = PrissmaConfig.getDefault();
+		else
+			this.config = config;
 		this.inputGraphContextUnits = new HashSet<ContextUnit>();
 		this.inputGraphEdges = new HashSet<Edge>();
-		this.candidates = new HashMap<Integer, List<ETSubgraphIsomorphism>>();
+		this.inputGraphEdgesByEndpoints = new HashMap<Long, List<Edge>>();
+		this.inputGraphContextUnitsByType = new EnumMap<CtxUnitType, List<ContextUnit>>(CtxUnitType.class);
+		this.inputGraphEntitiesByURI = new HashMap<String, ContextUnit>();
+		this.inputGraphClassesByURI = new HashMap<String, ContextUnit>();
+		this.reachableInputUnits = new HashMap<Integer, List<ContextUnit>>();
+		this.reachIndexedTypes = EnumSet.noneOf(CtxUnitType.class);
+		this.candidates = new CandidateQueue();
 		this.winners = new HashMap<Integer, List<ETSubgraphIsomorphism>>();
 		this.results = new HashSet<URI>();
-		
-		// read params from property file
-		try {
-			Configuration config = new PropertiesConfiguration("config.properties");
-			PrissmaProperties.THRESHOLD = config.getDouble("threshold");
-			PrissmaProperties.MISSING_CTXUNIT_ENTITY_COST = config.getDouble("missing_ctxunit_entity_cost");
-			PrissmaProperties.MISSING_CTXUNIT_STRING_COST = config.getDouble("missing_ctxunit_string_cost");
-			PrissmaProperties.DECAY_CONSTANT_TIME = config.getDouble("decay_constant_time");
-			PrissmaProperties.DECAY_CONSTANT_GEO = config.getDouble("decay_constant_geo");
-			
-			switch (config.getString("string_similarity")) {
-			case "JARO":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.JARO; 
-				break;
-			case "JARO_WINKLER":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.JARO_WINKLER; 
-				break;	
-			case "MONGE_ELKAN":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.MONGE_ELKAN; 
-				break;
-			case "LEVENSTHEIN":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.LEVENSTHEIN; 
-				break;
-			case "LIN":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.LIN; 
-				break;
-			case "WUPALMER":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.WUPALMER; 
-				break;
-			case "PATH":
-				PrissmaProperties.STRING_SIMILARITY = StringSimilarity.PATH; 
-				break;
-			default:
-				LOG.error("Similarity measure not supported");
-				break;
-		}
-			
-			
-			
-			PrissmaProperties.ENTITIES_PATH = config.getString("fresnel_folder");
-		} catch (ConfigurationException e) {
-			LOG.error("Error reading property file {}", e.getMessage());
-		}
+		this.resultCosts = new LinkedHashMap<URI, Double>();
+	}
 	
-		
-		
+	
+	public PrissmaConfig getConfig(){
+		return config;
 	}
 
 
 
+	/**
+	 * Searches all the prisms matching the input context within the threshold. 
+	 * Sets results and resultCosts.
+	 * @param inputCtx
+	 */
 	public void search(RDFNode inputCtx){
+		search(inputCtx, 0);
+	}
+	
+	
+	/**
+	 * Searches the k best prisms matching the input context within the threshold. 
+	 * The search stops as soon as k prisms cost no more than any candidate still to be selected.
+	 * Such bound is the minimum between the cheapest queued candidate and the cheapest winner, 
+	 * since combined candidates cost the average of a selected candidate and of a winner.
+	 * Exact context unit matches (e.g. CLASS units) are winners w/ cost 0: 
+	 * once one is selected, the search stops early only if k prisms match exactly, 
+	 * otherwise it selects the same candidates of a complete search.
+	 * Results are the same as the first k of a complete search, except for prisms w/ the same cost.
+	 * Sets results and resultCosts w/ the returned prisms.
+	 * @param inputCtx
+	 * @param k number of prisms, or <= 0 for all the prisms within the threshold (same as search(inputCtx))
+	 * @return the prisms w/ their cost, sorted by cost
+	 */
+	public List<PrismResult> search(RDFNode inputCtx, int k){
 		
 		// preliminary: create input graph context units
 		// sets inputGraphContextUnits and inputGraphEdges.
 		ContextUnitConverter c = new ContextUnitConverter();
-		c.convertInputToUnits(inputCtx, decomp.substitutions.values());
+		Map<String, String> classSubstitutions = (substitutions != null) ? substitutions : decomp.substitutions;
+		c.convertInputToUnits(inputCtx, classSubstitutions.values());
 		this.inputGraphContextUnits = c.inputGraphContextUnits;
 		this.inputGraphEdges = c.inputGraphEdges;
+		indexInputGraph();
 		
 		
 		// First, compute et-subgraph isomorphism from each context unit to decomposition elements.
 		// (match each context unit in the decomposition with input graph
 		// and computes context unit costs.)
-		for (DecompItem item : decomp.elements){ 
-			if (item.isCtxUnit){
-				candidates.put(Integer.valueOf(item.id), matchDecompCtxUnitToInputGraph(item));
-			}
-		}
+		List<Integer> ctxUnitIds = decomp.getCtxUnitItemIds();
+		List<DecompItem> ctxUnitItems = new ArrayList<DecompItem>(ctxUnitIds.size());
+		for (int id : ctxUnitIds)
+			ctxUnitItems.add(decomp.elements.get(id));
+		findReachableInputUnits();
+		RelatednessCalculator rc = getRelatednessCalculator(config.stringSimilarity);
+		if (rc != null)
+			resolveSynsets(ctxUnitItems, rc);
+		List<List<ETSubgraphIsomorphism>> ctxUnitCandidates = matchDecompCtxUnits(ctxUnitItems);
+		for (int i = 0; i < ctxUnitItems.size(); i++)
+			candidates.addAll(ctxUnitItems.get(i).id, ctxUnitCandidates.get(i));
 		
 		// returns element in D with et-sub-is with lowest cost
 		DecompItem item1 = getDecompMin();
+		double minWinnerCost = Double.POSITIVE_INFINITY;
+		KBestCosts kBestCosts = (k > 0) ? new KBestCosts(k) : null;
+		selectedCandidates = 0;
 		
-		while(item1 != null && this.currentMinCost <= PrissmaProperties.THRESHOLD){
+		while(item1 != null && this.currentMinCost <= config.threshold){
+			// top-k: no candidate still to be selected can beat the k best prisms
+			if (kBestCosts != null && kBestCosts.getKthCost() <= Math.min(this.currentMinCost, minWinnerCost))
+				break;
+			selectedCandidates++;
 			LOG.info("Min Item:" + item1);
-			// use first element of each candidate list since candidate has been sorted in getDecompMin()
-			ETSubgraphIsomorphism f1 = candidates.get(item1.id).remove(0);
+			// head of the candidate queue is the candidate returned by getDecompMin()
+			ETSubgraphIsomorphism f1 = candidates.poll().candidate;
 			if (winners.get(item1.id)==null)
 				winners.put(item1.id, new ArrayList<ETSubgraphIsomorphism>());
 			winners.get(item1.id).add(f1);
+			minWinnerCost = Math.min(minWinnerCost, f1.cost);
 			
 			// if it is a prism, add to results
 			if (item1.prismURISet != null && !item1.prismURISet.isEmpty()){
 //				if (computeCost(item1) <= PrissmaProperties.THRESHOLD )
 					results.addAll(item1.prismURISet);
+				addResultCosts(item1.prismURISet, f1.cost, kBestCosts);
 			}
 			
 			// search all descendants of item1
-			for (DecompItem item : decomp.elements){
-				DecompItem item2 = null;
-				// determines if item is descendant of item1
-				if (item.idAncestor1 == item1.id)
-					item2 = decomp.elements.get(item.idAncestor2);
-				else if(item.idAncestor2 == item1.id)
-					item2 = decomp.elements.get(item.idAncestor1);
+			for (int descendantId : decomp.getDescendants(item1.id)){
+				// item2 is the other ancestor of the descendant
+				int item2Id = decomp.getOtherAncestorId(descendantId, item1.id);
 				
-				// if the descendant item exists and there is another ancestor item2
-				if (item2!=null){
-					// pick elements from winner of the other ancestor
-					if(winners.get(item2.id)!=null){
-						for(ETSubgraphIsomorphism f2 : winners.get(item2.id)){
-							ETSubgraphIsomorphism f = combine(item.edges,f1,f2); 
-							// add f to candidates(item.id)
-							if (f!=null){
-								if (candidates.get(item.id)==null)
-									candidates.put(item.id, new ArrayList<ETSubgraphIsomorphism>());
-								candidates.get(item.id).add(f);
-							}
-								
-						}
+				// if there is another ancestor item2, pick elements from its winners
+				// (the descendant is only read if there are some)
+				List<ETSubgraphIsomorphism> item2Winners = (item2Id >= 0) ? winners.get(item2Id) : null;
+				if (item2Winners != null){
+					DecompItem item = decomp.elements.get(descendantId);
+					for(ETSubgraphIsomorphism f2 : item2Winners){
+						ETSubgraphIsomorphism f = combine(item.edges,f1,f2); 
+						// add f to candidates(item.id)
+						if (f!=null)
+							candidates.add(item.id, f);
+							
 					}
 				}
 			}
 			// set next element
 			item1 = getDecompMin();
 		}
-		return;
+		return getRankedResults(k);
+	}
+	
+	
+	/**
+	 * Keeps the best cost of each prism, and the k best costs if kBestCosts is not null.
+	 */
+	private void addResultCosts(Set<URI> prismURIs, double cost, KBestCosts kBestCosts){
+		for (URI prismURI : prismURIs) {
+			Double bestCost = resultCosts.get(prismURI);
+			if (bestCost == null || cost < bestCost){
+				resultCosts.put(prismURI, cost);
+				if (kBestCosts != null)
+					kBestCosts.update(bestCost, cost);
+			}
+		}
+	}
+	
+	
+	/**
+	 * The k lowest prism costs, in a max-heap of size k: the k-th lowest cost is its head.
+	 */
+	private static class KBestCosts {
+		private final int k;
+		private final PriorityQueue<Double> heap;
+		
+		private KBestCosts(int k) {
+			this.k = k;
+			this.heap = new PriorityQueue<Double>(k, Collections.<Double>reverseOrder());
+		}
+		
+		/**
+		 * Adds the cost of a new prism (oldCost null), or lowers the cost of a prism from oldCost.
+		 */
+		private void update(Double oldCost, double cost){
+			if (oldCost != null && (heap.size() < k || oldCost <= heap.peek())){
+				// the old cost is among the k lowest (or equal to the k-th): replace it
+				heap.remove(oldCost);
+				heap.offer(cost);
+				return;
+			}
+			heap.offer(cost);
+			if (heap.size() > k)
+				heap.poll();
+		}
+		
+		/**
+		 * Returns the k-th lowest prism cost, or +infinity if less than k prisms were found.
+		 */
+		private double getKthCost(){
+			return (heap.size() < k) ? Double.POSITIVE_INFINITY : heap.peek();
+		}
+	}
+	
+	
+	/**
+	 * Sorts the found prisms by cost (ties in discovery order), and keeps the k best, if k > 0.
+	 * Restricts results and resultCosts to the returned prisms.
+	 */
+	private List<PrismResult> getRankedResults(int k){
+		List<PrismResult> ranked = new ArrayList<PrismResult>(resultCosts.size());
+		for (Map.Entry<URI, Double> entry : resultCosts.entrySet())
+			ranked.add(new PrismResult(entry.getKey(), entry.getValue()));
+		// stable sort
+		Collections.sort(ranked);
+		if (k > 0 && ranked.size() > k){
+			ranked = new ArrayList<PrismResult>(ranked.subList(0, k));
+			Map<URI, Double> kept = new LinkedHashMap<URI, Double>();
+			for (PrismResult result : ranked)
+				kept.put(result.prism, result.cost);
+			resultCosts = kept;
+			results.retainAll(kept.keySet());
+		}
+		return ranked;
 	}
 	
 	
@@ -231,10 +378,11 @@ public class Matcher {
 		double cost = 0;
 		List<ETSubgraphIsomorphism> winners = this.winners.get(item.id);
 		ETSubgraphIsomorphism etSubgraphIsomorphism = winners.get(0);
-		for (EditOperation op : etSubgraphIsomorphism.deltaList) {
+		List<EditOperation> editPath = etSubgraphIsomorphism.getEditPath();
+		for (EditOperation op : editPath) {
 			cost += op.cost;
 		}
-		cost = cost/etSubgraphIsomorphism.deltaList.size();
+		cost = cost/editPath.size();
 		return cost;
 	}
 
@@ -246,34 +394,26 @@ public class Matcher {
 	private ETSubgraphIsomorphism combine(List<Edge> edges,
 			ETSubgraphIsomorphism f1, ETSubgraphIsomorphism f2){
 		
-		ETSubgraphIsomorphism f = new ETSubgraphIsomorphism();
-		
 		//TODO check images of f1 + f2 to avoid duplicates in merge ancestors
 		
-		// Merge ancestors' graph edit operations (deltas)
-		f.deltaList.addAll(f1.deltaList);
-		f.deltaList.addAll(f2.deltaList);
+		// Reference ancestors' graph edit operations (deltas), instead of copying them
+		ETSubgraphIsomorphism f = new ETSubgraphIsomorphism(f1, f2);
 		
 		// build delta_e
 		for (Edge edge : edges) {
 			EditOperation edgeOp =null;
-			Iterator<Edge> itInputEdges = inputGraphEdges.iterator();
-			boolean inputFound = false;
-			while(itInputEdges.hasNext() && !inputFound){
-				Edge eInput = itInputEdges.next();
-				// 2) edge substitution, i.e. if the edge exists
-				if (eInput.v1.equals(edge.v1) && eInput.v2.equals(edge.v2)){
-					edgeOp = substituteEdge(eInput,edge);
-					inputFound = true;
-				}
+			Edge eInput = findInputEdge(edge);
+			// 2) edge substitution, i.e. if the edge exists
+			if (eInput != null){
+				edgeOp = substituteEdge(eInput,edge);
 			}
 			// 3) edge deletion, i.e. edge does not exist in input graph
-			if (!inputFound){
+			else {
 				edgeOp = deleteEdge(edge); //TODO
 			}
 			
 			if (edgeOp!=null)
-				f.deltaList.add(edgeOp);
+				f.addOperation(edgeOp);
 		}
 		
 //		// 1) edge insertion, i.e. edge in input but not in decomposition //TODO
@@ -326,6 +466,7 @@ public class Matcher {
 
 	/**
 	 * Finds and returns decompItem with minimum cost and sets current global minimum cost.
+	 * The candidate itself is left at the head of the candidate queue.
 	 * 
 	 * @return the item in the decomposition with minimum cost
 	 */
@@ -334,35 +475,318 @@ public class Matcher {
 		if (this.candidates==null || this.candidates.isEmpty())
 			return null;
 		
-		Integer minItemID = null;
-		// set to maximum cost
-		double minItemCost = PrissmaProperties.MAX;
-		
-		Iterator<Entry<Integer, List<ETSubgraphIsomorphism>>> it = this.candidates.entrySet().iterator();
-		while (it.hasNext()){
-			Map.Entry<Integer, List<ETSubgraphIsomorphism>> pairs = it.next();
-			List<ETSubgraphIsomorphism> isoListNode = (List<ETSubgraphIsomorphism>) pairs.getValue();
-			if (!isoListNode.isEmpty()) {
-				Collections.sort(isoListNode);
-				double itemCost = isoListNode.get(0).cost;
-				Integer itemID = (Integer) pairs.getKey();
-				if (itemCost < minItemCost) {
-					minItemCost = itemCost;
-					minItemID = itemID;
-				}
+		CandidateQueue.Entry min = this.candidates.peek();
+		// candidates at maximum cost are never selected
+		if (!(min.candidate.cost < PrissmaProperties.MAX))
+			return null;
+		this.currentMinCost = min.candidate.cost; // set minimum cost globally
+		return decomp.elements.get(min.itemId);
+	}
+
+
+
+	
+	/**
+	 * Partitions the input context units by type, and indexes ENTITY and CLASS units by URI.
+	 * Sets inputGraphContextUnitsByType, inputGraphEntitiesByURI and inputGraphClassesByURI.
+	 * Indexes input edges by endpoints in inputGraphEdgesByEndpoints.
+	 */
+	private void indexInputGraph(){
+		inputGraphContextUnitsByType.clear();
+		inputGraphEntitiesByURI.clear();
+		inputGraphClassesByURI.clear();
+		for (ContextUnit inputUnit : inputGraphContextUnits) {
+			List<ContextUnit> units = inputGraphContextUnitsByType.get(inputUnit.type);
+			if (units == null){
+				units = new ArrayList<ContextUnit>();
+				inputGraphContextUnitsByType.put(inputUnit.type, units);
 			}
+			units.add(inputUnit);
+			
+			String uri = null;
+			if (inputUnit.instance != null && inputUnit.instance.isURIResource())
+				uri = inputUnit.instance.asResource().getURI();
+			if (uri != null && inputUnit.type == CtxUnitType.ENTITY && !inputGraphEntitiesByURI.containsKey(uri))
+				inputGraphEntitiesByURI.put(uri, inputUnit);
+			else if (uri != null && inputUnit.type == CtxUnitType.CLASS && !inputGraphClassesByURI.containsKey(uri))
+				inputGraphClassesByURI.put(uri, inputUnit);
 		}
 		
-		// if not found
-		if (minItemID==null)
+		inputGraphEdgesByEndpoints.clear();
+		for (Edge inputEdge : inputGraphEdges) {
+			Long key = getEndpointsKey(inputEdge);
+			List<Edge> edges = inputGraphEdgesByEndpoints.get(key);
+			if (edges == null){
+				edges = new ArrayList<Edge>(1);
+				inputGraphEdgesByEndpoints.put(key, edges);
+			}
+			edges.add(inputEdge);
+		}
+	}
+	
+	
+	/**
+	 * Finds the input edge with the same endpoints of a decomposition edge, regardless of the label.
+	 * Edges sharing the endpoint ids are checked in input edge set order, 
+	 * hence the first matching input edge wins, as in a linear scan of inputGraphEdges.
+	 * @param edge
+	 * @return the input edge, or null if the edge does not exist in the input graph
+	 */
+	private Edge findInputEdge(Edge edge){
+		List<Edge> edges = inputGraphEdgesByEndpoints.get(getEndpointsKey(edge));
+		if (edges == null)
 			return null;
+		for (Edge eInput : edges) {
+			// equal units have equal instance ids, GEO and TIME units also need equal payloads
+			if (eInput.v1.equals(edge.v1) && eInput.v2.equals(edge.v2))
+				return eInput;
+		}
+		return null;
+	}
+	
+	
+	/**
+	 * Combines the instance ids of the endpoints of an edge. 
+	 * Edges w/ different endpoints seldom share keys, and findInputEdge() compares their endpoints anyway.
+	 */
+	private static Long getEndpointsKey(Edge edge){
+		return edge.v1.getInstanceId() * 0x9e3779b97f4a7c15L + edge.v2.getInstanceId();
+	}
+	
+	
+	/**
+	 * Runs the context unit matching method for each item.
+	 * Items are independent, hence they are split in chunks, and matched by up to 
+	 * CTXUNIT_MATCHING_PARALLELISM workers when it is > 1: the calling thread and 
+	 * workers of the shared matching pool, which pick chunks until there are none left.
+	 * @param ctxUnitItems
+	 * @return the candidates of each item, in the same order of ctxUnitItems
+	 */
+	private List<List<ETSubgraphIsomorphism>> matchDecompCtxUnits(final List<DecompItem> ctxUnitItems){
+		
+		int parallelism = config.ctxUnitMatchingParallelism;
+		if (parallelism <= 1 || ctxUnitItems.size() < 2){
+			List<List<ETSubgraphIsomorphism>> matched = new ArrayList<List<ETSubgraphIsomorphism>>(ctxUnitItems.size());
+			for (DecompItem item : ctxUnitItems)
+				matched.add(matchDecompCtxUnitToInputGraph(item));
+			return matched;
+		}
 		
-		this.currentMinCost = minItemCost; // set minimum cost globally
-		return decomp.elements.get(minItemID);
+		// a few chunks per worker to balance expensive (e.g. semantic string) units 
+		final int chunkCount = Math.min(ctxUnitItems.size(), parallelism * 4);
+		final int chunkSize = (ctxUnitItems.size() + chunkCount - 1) / chunkCount;
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicReferenceArray<List<ETSubgraphIsomorphism>> matchedItems = 
+				new AtomicReferenceArray<List<ETSubgraphIsomorphism>>(ctxUnitItems.size());
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				for (int chunk = nextChunk.getAndIncrement(); chunk < chunkCount; chunk = nextChunk.getAndIncrement()){
+					int to = Math.min((chunk + 1) * chunkSize, ctxUnitItems.size());
+					for (int i = chunk * chunkSize; i < to; i++)
+						matchedItems.set(i, matchDecompCtxUnitToInputGraph(ctxUnitItems.get(i)));
+				}
+			}
+		};
+		
+		// the calling thread is one of the workers
+		int poolWorkers = Math.min(Math.min(parallelism, chunkCount) - 1, MATCHING_POOL_SIZE);
+		List<Future<?>> workers = new ArrayList<Future<?>>(poolWorkers);
+		try {
+			for (int i = 0; i < poolWorkers; i++)
+				workers.add(MatchingPool.POOL.submit(worker));
+			worker.run();
+			for (Future<?> future : workers)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Context unit matching interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException("Context unit matching failed", e.getCause());
+		} finally {
+			// workers of a failed matching stop at their next chunk
+			nextChunk.set(chunkCount);
+		}
+		
+		List<List<ETSubgraphIsomorphism>> matched = new ArrayList<List<ETSubgraphIsomorphism>>(ctxUnitItems.size());
+		for (int i = 0; i < ctxUnitItems.size(); i++)
+			matched.add(matchedItems.get(i));
+		return matched;
 	}
-
-
-
+	
+	
+	/**
+	 * Thread pool shared by all the matchers and engines of the process for the context unit matching phase, 
+	 * w/ one thread per available processor, created at the first parallel matching.
+	 * The pool is never shut down: its threads are daemons, and do not prevent the JVM from exiting.
+	 */
+	private static class MatchingPool {
+		private static final ExecutorService POOL = Executors.newFixedThreadPool(MATCHING_POOL_SIZE, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "prissma-ctxunit-matcher-" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	
+	/**
+	 * Looks up the decomposition GEO and TIME indexes to find, for each decomposition GEO and TIME unit, 
+	 * the input units that may be within its reach. 
+	 * Outside the reach, the substitution cost exceeds THRESHOLD and the candidate is never selected.
+	 * With q = -ln(1 - THRESHOLD) / k:
+	 * - GEO: 1 - exp(-k * (d - r) / d) <= THRESHOLD  iff  d <= r / (1 - q). If q >= 1 every distance is within reach.
+	 * - TIME: 1 - exp(-k * t / duration) <= THRESHOLD  iff  t <= q * duration, 
+	 *   with t the time before start or after start + duration.
+	 * Units of a type w/o index are all matched.
+	 */
+	private void findReachableInputUnits(){
+		reachableInputUnits = new HashMap<Integer, List<ContextUnit>>();
+		reachIndexedTypes = EnumSet.noneOf(CtxUnitType.class);
+		
+		double geoReachFactor = getGeoReachFactor(config);
+		if (!Double.isNaN(geoReachFactor)){
+			GeoIndex geoIndex = decomp.getGeoIndex(geoReachFactor);
+			reachIndexedTypes.add(CtxUnitType.GEO);
+			List<ContextUnit> inputGeoUnits = inputGraphContextUnitsByType.get(CtxUnitType.GEO);
+			if (inputGeoUnits != null){
+				for (ContextUnit inputUnit : inputGeoUnits) {
+					inputUnit.parsePayload();
+					// incomplete input location: max cost w/ every unit
+					if (Double.isNaN(inputUnit.lat) || Double.isNaN(inputUnit.lon))
+						continue;
+					addReachableInputUnit(inputUnit, geoIndex.query(inputUnit.lat, inputUnit.lon));
+				}
+			}
+		}
+		
+		double timeHorizon = getTimeHorizon(config);
+		if (!Double.isNaN(timeHorizon)){
+			IntervalIndex timeIndex = decomp.getTimeIndex(timeHorizon);
+			reachIndexedTypes.add(CtxUnitType.TIME);
+			List<ContextUnit> inputTimeUnits = inputGraphContextUnitsByType.get(CtxUnitType.TIME);
+			if (inputTimeUnits != null){
+				for (ContextUnit inputUnit : inputTimeUnits) {
+					inputUnit.parsePayload();
+					// incomplete input time: max cost w/ every unit
+					if (Double.isNaN(inputUnit.start))
+						continue;
+					addReachableInputUnit(inputUnit, timeIndex.query(inputUnit.start));
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the reach factor of the GEO index used by the searches w/ the configuration, 
+	 * or NaN if GEO units are not indexed (see findReachableInputUnits).
+	 */
+	private static double getGeoReachFactor(PrissmaConfig config){
+		double qGeo = - Math.log(1 - config.threshold) / config.decayConstantGeo;
+		if (config.pruneCandidates && config.decayConstantGeo > 0 && qGeo < 1)
+			return 1 / (1 - qGeo);
+		return Double.NaN;
+	}
+	
+	
+	/**
+	 * Returns the horizon of the TIME index used by the searches w/ the configuration, 
+	 * or NaN if TIME units are not indexed (see findReachableInputUnits).
+	 */
+	private static double getTimeHorizon(PrissmaConfig config){
+		double qTime = - Math.log(1 - config.threshold) / config.decayConstantTime;
+		if (config.pruneCandidates && config.decayConstantTime > 0 && qTime >= 0 && !Double.isInfinite(qTime))
+			return qTime;
+		return Double.NaN;
+	}
+	
+	
+	/**
+	 * Builds the GEO and TIME indexes, and resolves the WordNet synsets of the decomposition STRING units, 
+	 * used by the searches w/ the configuration: these searches then only read the decomposition (see SelectionEngine).
+	 * @param decomp
+	 * @param config
+	 */
+	static void prepare(Decomposition decomp, PrissmaConfig config){
+		double geoReachFactor = getGeoReachFactor(config);
+		if (!Double.isNaN(geoReachFactor))
+			decomp.getGeoIndex(geoReachFactor);
+		double timeHorizon = getTimeHorizon(config);
+		if (!Double.isNaN(timeHorizon))
+			decomp.getTimeIndex(timeHorizon);
+		
+		RelatednessCalculator rc = getRelatednessCalculator(config.stringSimilarity);
+		if (rc == null || decomp.isReadOnly())
+			return;
+		Set<String> posSet = getPOSSet(rc);
+		for (int id : decomp.getCtxUnitItemIds()) {
+			ContextUnit unit = decomp.elements.get(id).ctxUnit;
+			if (unit != null && unit.type == CtxUnitType.STRING)
+				resolveSynsets(unit, posSet);
+		}
+	}
+	
+	
+	private void addReachableInputUnit(ContextUnit inputUnit, List<Integer> decompItemIds){
+		for (int id : decompItemIds) {
+			List<ContextUnit> reachableUnits = reachableInputUnits.get(id);
+			if (reachableUnits == null){
+				reachableUnits = new ArrayList<ContextUnit>(1);
+				reachableInputUnits.put(id, reachableUnits);
+			}
+			reachableUnits.add(inputUnit);
+		}
+	}
+	
+	
+	/**
+	 * Returns the input context units to match against a decomposition context unit.
+	 * Substitutions w/ input units of another type, and w/ ENTITY or CLASS units 
+	 * that have a different URI, cost MAX and are never selected: 
+	 * if pruning, they are skipped (the deletion of the unit is always added anyway). 
+	 * So are GEO and TIME units out of reach of the decomposition unit.
+	 * @param decompUnit
+	 * @return
+	 */
+	private Collection<ContextUnit> getMatchableInputUnits(DecompItem decompUnit){
+		
+		if (!config.pruneCandidates)
+			return this.inputGraphContextUnits;
+		
+		ContextUnit decompCtxUnit = decompUnit.ctxUnit;
+		if (reachIndexedTypes.contains(decompCtxUnit.type)){
+			List<ContextUnit> reachableUnits = reachableInputUnits.get(decompUnit.id);
+			if (reachableUnits == null)
+				return Collections.emptyList();
+			return reachableUnits;
+		}
+		
+		Map<String, ContextUnit> uriIndex = null;
+		if (decompCtxUnit.type == CtxUnitType.ENTITY)
+			uriIndex = this.inputGraphEntitiesByURI;
+		else if (decompCtxUnit.type == CtxUnitType.CLASS)
+			uriIndex = this.inputGraphClassesByURI;
+		if (uriIndex != null){
+			ContextUnit sameURIUnit = uriIndex.get(decompCtxUnit.instance.asResource().getURI());
+			if (sameURIUnit == null)
+				return Collections.emptyList();
+			return Collections.singletonList(sameURIUnit);
+		}
+		
+		List<ContextUnit> sameTypeUnits = this.inputGraphContextUnitsByType.get(decompCtxUnit.type);
+		if (sameTypeUnits == null)
+			return Collections.emptyList();
+		return sameTypeUnits;
+	}
+	
 	
 	/**
 	 * Context Unit Matching method
@@ -372,43 +796,70 @@ public class Matcher {
 	private List<ETSubgraphIsomorphism> matchDecompCtxUnitToInputGraph(DecompItem decompUnit){
 		
 		List<ETSubgraphIsomorphism> ETSIList = new ArrayList<ETSubgraphIsomorphism>();
-		for (ContextUnit inputUnit : this.inputGraphContextUnits) {
-			ContextUnit instanceCtxUnit = decompUnit.ctxUnit;
+		ContextUnit instanceCtxUnit = decompUnit.ctxUnit;
+		// GEO and TIME units are compared w/ their payloads, which equality does not fully cover
+		boolean cached = matchCache != null 
+				&& instanceCtxUnit.type != CtxUnitType.GEO && instanceCtxUnit.type != CtxUnitType.TIME;
+		for (ContextUnit inputUnit : getMatchableInputUnits(decompUnit)) {
 			ETSubgraphIsomorphism substitution = null;
-			switch (instanceCtxUnit.type) {
-			case GEO: 
-				substitution = computeNodeSubstitutionGeo(instanceCtxUnit, inputUnit);
-				break;
-			case TIME:
-				substitution = computeNodeSubstitutionTime(instanceCtxUnit, inputUnit);
-				break;
-			case STRING:
-				substitution = computeNodeSubstitutionString(instanceCtxUnit, inputUnit);
-				break;
-			case ENTITY:
-				substitution = computeNodeSubstitutionEntity(instanceCtxUnit, inputUnit);
-				break;
-			case CLASS:
-				substitution = computeNodeSubstitutionClass(instanceCtxUnit, inputUnit);
-				break;
-			default:
-				break;
+			if (cached){
+				Double cost = matchCache.get(decompUnit.id, inputUnit);
+				if (cost != null)
+					substitution = createNodeSubstitution(instanceCtxUnit, inputUnit, cost);
+			}
+			if (substitution == null){
+				substitution = computeNodeSubstitution(instanceCtxUnit, inputUnit);
+				if (cached && substitution != null)
+					matchCache.put(decompUnit.id, inputUnit, substitution.cost);
 			}
 			if (substitution!=null)
 				ETSIList.add(substitution);
 		}
 		
 		// add deletion
-		ETSubgraphIsomorphism deletion = null;
-		deletion = computeNodeDeletion(decompUnit.ctxUnit);
+		ETSubgraphIsomorphism deletion = computeNodeDeletion(decompUnit.ctxUnit);
 		if (deletion!=null)
 			ETSIList.add(deletion);
 		
-		Collections.sort(ETSIList); // FIXME, remove from here and put in computeCost()?
 		return ETSIList;
 	}
 	
 	
+	/**
+	 * Creates the substitution candidate of a decomposition context unit w/ an input unit, 
+	 * whose cost is already known (see CtxUnitMatchCache).
+	 */
+	private ETSubgraphIsomorphism createNodeSubstitution(ContextUnit decompCtxUnit, ContextUnit inputCtxUnit, double cost){
+		EditOperation op =  new EditOperation();
+		ETSubgraphIsomorphism isosub = new ETSubgraphIsomorphism();
+		op.type = EditOperationType.SUB_ENT;
+		op.gDecomp = decompCtxUnit;
+		op.gInput = inputCtxUnit;
+		op.cost = cost;
+		isosub.addOperation(op);
+		isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
+		return isosub;
+	}
+	
+	
+	private ETSubgraphIsomorphism computeNodeSubstitution(ContextUnit instanceCtxUnit, ContextUnit inputUnit){
+		switch (instanceCtxUnit.type) {
+		case GEO: 
+			return computeNodeSubstitutionGeo(instanceCtxUnit, inputUnit);
+		case TIME:
+			return computeNodeSubstitutionTime(instanceCtxUnit, inputUnit);
+		case STRING:
+			return computeNodeSubstitutionString(instanceCtxUnit, inputUnit);
+		case ENTITY:
+			return computeNodeSubstitutionEntity(instanceCtxUnit, inputUnit);
+		case CLASS:
+			return computeNodeSubstitutionClass(instanceCtxUnit, inputUnit);
+		default:
+			return null;
+		}
+	}
+	
+	
 	
 
 	/**
@@ -427,13 +878,16 @@ public class Matcher {
 		if (inputCtxUnit.type != CtxUnitType.TIME ){
 			op.cost = PrissmaProperties.MAX;
 		} else {
-			double inStart, decompDuration, decompStart;
+			inputCtxUnit.parsePayload();
+			decompCtxUnit.parsePayload();
+			double inStart = inputCtxUnit.start;
+			double decompDuration = decompCtxUnit.duration;
+			double decompStart = decompCtxUnit.start;
 			
-			try {
-				inStart = inputCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pStart);
-				decompDuration = decompCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pDuration);
-				decompStart = decompCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pStart);
-
+			// if time ctxunit not complete, raise to max cost
+			if (Double.isNaN(inStart) || Double.isNaN(decompDuration) || Double.isNaN(decompStart))
+				op.cost = PrissmaProperties.MAX;
+			else {
 				// Exponential decay
 				// first, check if input time is in duration
 				double exceeedingtime = inStart - decompStart - decompDuration;
@@ -443,26 +897,22 @@ public class Matcher {
 				if (inStart >= decompStart && exceeedingtime <= 0)
 					op.cost = PrissmaProperties.MIN;
 				else if (inStart > decompStart && exceeedingtime > 0) {
-					op.cost = 1 - Math.exp(- PrissmaProperties.DECAY_CONSTANT_TIME * exceeedingtimePerc);
+					op.cost = 1 - Math.exp(- config.decayConstantTime * exceeedingtimePerc);
 				}
 				else if (inStart < decompStart){
 					exceeedingtime = decompStart - inStart;
 					exceeedingtimePerc = exceeedingtime / decompDuration;
-					op.cost = 1 - Math.exp(- PrissmaProperties.DECAY_CONSTANT_TIME * exceeedingtimePerc);
+					op.cost = 1 - Math.exp(- config.decayConstantTime * exceeedingtimePerc);
 				}
-				
-			} catch (ContextUnitException e) {
-				// if time ctxunit not complete, raise to max cost
-				op.cost = PrissmaProperties.MAX;
 			}
 		}
 		
 		op.type = EditOperationType.SUB_ENT;
 		op.gDecomp = decompCtxUnit;
 		op.gInput = inputCtxUnit;
-		isosub.deltaList.add(op);
+		isosub.addOperation(op);
 		// update cost
-		isosub.cost = (isosub.cost + op.cost)/isosub.deltaList.size();
+		isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
 		return isosub;
 	}
 
@@ -498,10 +948,10 @@ public class Matcher {
 			opDel.cost = PrissmaProperties.MAX;
 			break;
 		case ENTITY:
-			opDel.cost = PrissmaProperties.MISSING_CTXUNIT_ENTITY_COST;
+			opDel.cost = config.missingCtxUnitEntityCost;
 			break;
 		case STRING:
-			opDel.cost = PrissmaProperties.MISSING_CTXUNIT_STRING_COST;
+			opDel.cost = config.missingCtxUnitStringCost;
 			break;
 		case CLASS:
 			opDel.cost = PrissmaProperties.MAX;
@@ -510,9 +960,9 @@ public class Matcher {
 			break;
 		}
 		
-		deletion.deltaList.add(opDel);
+		deletion.addOperation(opDel);
 		// update ETSubgraphIsomorphism cost
-		deletion.cost = (deletion.cost + opDel.cost)/deletion.deltaList.size();
+		deletion.cost = (deletion.cost + opDel.cost)/deletion.getEditPathLength();
 		return deletion;
 	}
 
@@ -533,16 +983,17 @@ public class Matcher {
 		if (inputCtxUnit.type != CtxUnitType.GEO ){
 			op.cost = PrissmaProperties.MAX;
 		} else {
-			double latRef, lonRef, latIn, lonIn, dist, radiusRef;
+			inputCtxUnit.parsePayload();
+			decompCtxUnit.parsePayload();
 			
-			try {
-				latIn = inputCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pLat);
-				lonIn = inputCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pLon);
-				latRef = decompCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pLat);
-				lonRef = decompCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pLon);
-				radiusRef = decompCtxUnit.getComplexCtxUnitProp(PrissmaProperties.pRad) / 1000; // Km
-				
-				dist = haversineDistance(latIn, lonIn, latRef, lonRef); // Km
+			// if at least one geo element not present, raise to max cost
+			if (Double.isNaN(inputCtxUnit.lat) || Double.isNaN(inputCtxUnit.lon) 
+					|| Double.isNaN(decompCtxUnit.lat) || Double.isNaN(decompCtxUnit.lon) 
+					|| Double.isNaN(decompCtxUnit.radius))
+				op.cost = PrissmaProperties.MAX;
+			else {
+				double radiusRef = decompCtxUnit.radius / 1000; // Km
+				double dist = haversineDistance(inputCtxUnit, decompCtxUnit); // Km
 				// if input location inside p:radius
 				if (dist <= radiusRef)
 					op.cost = PrissmaProperties.MIN;
@@ -552,21 +1003,17 @@ public class Matcher {
 					double edgeDist = dist - radiusRef;
 					// need to normalize the distance from circle
 					double edgeDistPerc = edgeDist / dist;
-					op.cost = 1 - Math.exp(- PrissmaProperties.DECAY_CONSTANT_GEO * edgeDistPerc);
+					op.cost = 1 - Math.exp(- config.decayConstantGeo * edgeDistPerc);
 				}
-				
-			} catch (ContextUnitException e) {
-				// if at least one geo element not present, raise to max cost
-				op.cost = PrissmaProperties.MAX;
 			}
 		}
 		
 		op.type = EditOperationType.SUB_ENT;
 		op.gDecomp = decompCtxUnit;
 		op.gInput = inputCtxUnit;
-		isosub.deltaList.add(op);
+		isosub.addOperation(op);
 		// update cost
-		isosub.cost = (isosub.cost + op.cost)/isosub.deltaList.size();
+		isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
 		return isosub;
 	}
 
@@ -600,9 +1047,9 @@ public class Matcher {
 		op.type = EditOperationType.SUB_ENT;
 		op.gDecomp = decompCtxUnit;
 		op.gInput = inputUnit;
-		isosub.deltaList.add(op);
+		isosub.addOperation(op);
 		// update cost
-		isosub.cost = (isosub.cost + op.cost)/isosub.deltaList.size();
+		isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
 		
 		return isosub;
 	}
@@ -636,9 +1083,9 @@ public class Matcher {
 		op.type = EditOperationType.SUB_ENT;
 		op.gDecomp = decompCtxUnit;
 		op.gInput = inputUnit;
-		isosub.deltaList.add(op);
+		isosub.addOperation(op);
 		// update cost
-		isosub.cost = (isosub.cost + op.cost)/isosub.deltaList.size();
+		isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
 		
 		return isosub;
 	}
@@ -659,42 +1106,9 @@ public class Matcher {
 			if (inputUnit.type != CtxUnitType.STRING ){
 				op.cost = PrissmaProperties.MAX;
 			} else {
-				// get first and only element because it is string type
-				RDFNode inputNode = inputUnit.instance;
-				RDFNode decompNode = decompCtxUnit.instance;
 				// string matching
-				String inputStr = inputNode.asNode().getLiteral().getValue().toString();
-				String decompString = decompNode.asNode().getLiteral().getValue().toString();
-				switch (PrissmaProperties.STRING_SIMILARITY) {
-					case JARO:
-						op.cost = PrissmaProperties.MAX - jaroSimilarity(inputStr,decompString); 
-						break;
-					case JARO_WINKLER:
-						op.cost = PrissmaProperties.MAX - jaroWinklerSimilarity(inputStr,decompString); 
-						break;	
-					case MONGE_ELKAN:
-						op.cost = PrissmaProperties.MAX - mongeElkanSimilarity(inputStr, decompString); 
-						break;
-					case LEVENSTHEIN:
-						op.cost = PrissmaProperties.MAX - levenstheinSimilarity(inputStr, decompString); 
-						break;
-					case LIN:
-						op.cost = PrissmaProperties.MAX - 
-							semanticStringSimilarity(inputStr, decompString, StringSimilarity.LIN); 
-						break;
-					case WUPALMER:
-						op.cost = PrissmaProperties.MAX - 
-							semanticStringSimilarity(inputStr, decompString, StringSimilarity.WUPALMER); 
-						break;
-					case PATH:
-						op.cost = PrissmaProperties.MAX - 
-							semanticStringSimilarity(inputStr, decompString, StringSimilarity.PATH); 
-						break;
-					default:
-						LOG.error("Similarity measure not supported");
-						op.cost = 1;
-						break;
-				}
+				op.cost = PrissmaProperties.MAX - 
+						stringSimilarity(inputUnit, decompCtxUnit, config.stringSimilarity);
 				
 				
 			}
@@ -702,55 +1116,101 @@ public class Matcher {
 			op.type = EditOperationType.SUB_ENT;
 			op.gDecomp = decompCtxUnit;
 			op.gInput = inputUnit;
-			isosub.deltaList.add(op);
+			isosub.addOperation(op);
 			// update cost
-			isosub.cost = (isosub.cost + op.cost)/isosub.deltaList.size();
+			isosub.cost = (isosub.cost + op.cost)/isosub.getEditPathLength();
 			
 			return isosub;
 		}
 
 
 
-	private double semanticStringSimilarity(String inputStr,
-			String decompString, StringSimilarity method) {
-
-		WS4JConfiguration.getInstance().setMFS(true);
-		
-		RelatednessCalculator rc = null;
-		switch (PrissmaProperties.STRING_SIMILARITY) {
-			case LIN:
-				rc = lin;
+	/**
+	 * Computes the similarity between the literals of two STRING context units with the given measure.
+	 * Scores are memoized in the shared similarity cache, if enabled.
+	 * @param inputUnit
+	 * @param decompCtxUnit
+	 * @param method
+	 * @return similarity in [0,1]
+	 */
+	private double stringSimilarity(ContextUnit inputUnit, ContextUnit decompCtxUnit, StringSimilarity method) {
+		String inputStr = getLiteralString(inputUnit);
+		String decompString = getLiteralString(decompCtxUnit);
+		SimilarityCache cache = getSimilarityCache(config.stringSimilarityCacheSize);
+		if (cache != null){
+			Double cached = cache.get(method, inputStr, decompString);
+			if (cached != null)
+				return cached;
+		}
+		double sim;
+		switch (method) {
+			case JARO:
+				sim = jaroSimilarity(inputStr,decompString); 
 				break;
-			case WUPALMER:
-				rc = wup;
+			case JARO_WINKLER:
+				sim = jaroWinklerSimilarity(inputStr,decompString); 
+				break;	
+			case MONGE_ELKAN:
+				sim = mongeElkanSimilarity(inputStr, decompString); 
+				break;
+			case LEVENSTHEIN:
+				sim = levenstheinSimilarity(inputStr, decompString); 
 				break;
+			case LIN:
+			case WUPALMER:
 			case PATH:
-				rc = path;
+				sim = semanticStringSimilarity(inputUnit, decompCtxUnit, method); 
 				break;
 			default:
 				LOG.error("Similarity measure not supported");
-				return -1;
+				return 0;
 		}
-		List<POS[]> posPairs = rc.getPOSPairs();
-		double maxScore = -1D;
+		if (cache != null)
+			cache.put(method, inputStr, decompString, sim);
+		return sim;
+	}
+	
+	
+	/**
+	 * Returns the similarity cache shared by all matchers w/ the given cache size.
+	 * @param size maximum number of cached scores
+	 * @return the cache, or null if caching is disabled (size <= 0)
+	 */
+	public static SimilarityCache getSimilarityCache(int size){
+		if (size <= 0)
+			return null;
+		SimilarityCache cache = similarityCaches.get(size);
+		if (cache != null)
+			return cache;
+		cache = new SimilarityCache(size);
+		SimilarityCache concurrent = similarityCaches.putIfAbsent(size, cache);
+		return concurrent == null ? cache : concurrent;
+	}
+	
+
+
+	private double semanticStringSimilarity(ContextUnit inputUnit,
+			ContextUnit decompCtxUnit, final StringSimilarity method) {
 
+		final RelatednessCalculator rc = getRelatednessCalculator(method);
+		if (rc == null) {
+			LOG.error("Similarity measure not supported");
+			return -1;
+		}
+		List<POS[]> posPairs = rc.getPOSPairs();
+		List<List<Concept>> synsets1 = new ArrayList<List<Concept>>(posPairs.size());
+		List<List<Concept>> synsets2 = new ArrayList<List<Concept>>(posPairs.size());
 		for (POS[] posPair : posPairs) {
-			List<Concept> synsets1 = (List<Concept>) db.getAllConcepts(inputStr,
-					posPair[0].toString());
-			List<Concept> synsets2 = (List<Concept>) db.getAllConcepts(decompString,
-					posPair[1].toString());
-
-			for (Concept synset1 : synsets1) {
-				for (Concept synset2 : synsets2) {
-					Relatedness relatedness = rc.calcRelatednessOfSynset(
-							synset1, synset2);
-					double score = relatedness.getScore();
-					if (score > maxScore) {
-						maxScore = score;
-					}
-				}
-			}
+			synsets1.add(getSynsets(inputUnit, posPair[0].toString(), true));
+			// units of a shared decomposition are not modified by searches
+			synsets2.add(getSynsets(decompCtxUnit, posPair[1].toString(), !sharedDecomposition));
 		}
+		double maxScore = SemanticRelatedness.maxRelatedness(new SemanticRelatedness.SynsetScorer() {
+			@Override
+			public double getScore(Concept synset1, Concept synset2) {
+				return synsetRelatedness(rc, method, synset1, synset2);
+			}
+		}, synsets1, synsets2, config.semanticSimilarityBounded);
 
 		if (maxScore == -1D) {
 			maxScore = 0.0;
@@ -758,6 +1218,126 @@ public class Matcher {
 
 		return maxScore;
 	}
+	
+	
+	/**
+	 * Returns the relatedness of two synsets, computed w/ WordNet only if it has not been cached yet.
+	 */
+	private static double synsetRelatedness(RelatednessCalculator rc, StringSimilarity method, 
+			Concept synset1, Concept synset2){
+		Double cached = synsetRelatednessCache.get(method, synset1.getSynset(), synset2.getSynset());
+		if (cached != null)
+			return cached;
+		double score;
+		synchronized (wordNetLock) {
+			score = rc.calcRelatednessOfSynset(synset1, synset2).getScore();
+		}
+		synsetRelatednessCache.put(method, synset1.getSynset(), synset2.getSynset(), score);
+		return score;
+	}
+	
+	
+	private static RelatednessCalculator getRelatednessCalculator(StringSimilarity method){
+		switch (method) {
+			case LIN:
+				return lin;
+			case WUPALMER:
+				return wup;
+			case PATH:
+				return path;
+			default:
+				return null;
+		}
+	}
+	
+	
+	/**
+	 * Resolves the WordNet synsets of the STRING context units of the decomposition and of the input graph,
+	 * for the parts of speech used by the relatedness calculator.
+	 * Decomposition units keep their synsets across searches, input units are resolved once per search.
+	 * Units of read-only decompositions are decoded by each search, hence they are resolved when compared 
+	 * (see getSynsets), and only if their similarity is not cached.
+	 * Units of shared decompositions are resolved when the engine is created (see prepare), 
+	 * or else when compared, w/o keeping their synsets.
+	 * @param ctxUnitItems
+	 * @param rc
+	 */
+	private void resolveSynsets(List<DecompItem> ctxUnitItems, RelatednessCalculator rc){
+		Set<String> posSet = getPOSSet(rc);
+		if (!decomp.isReadOnly() && !sharedDecomposition){
+			for (DecompItem item : ctxUnitItems) {
+				if (item.ctxUnit != null && item.ctxUnit.type == CtxUnitType.STRING)
+					resolveSynsets(item.ctxUnit, posSet);
+			}
+		}
+		List<ContextUnit> inputStringUnits = inputGraphContextUnitsByType.get(CtxUnitType.STRING);
+		if (inputStringUnits != null) {
+			for (ContextUnit inputUnit : inputStringUnits)
+				resolveSynsets(inputUnit, posSet);
+		}
+	}
+	
+	
+	private static Set<String> getPOSSet(RelatednessCalculator rc){
+		Set<String> posSet = new HashSet<String>();
+		for (POS[] posPair : rc.getPOSPairs()) {
+			posSet.add(posPair[0].toString());
+			posSet.add(posPair[1].toString());
+		}
+		return posSet;
+	}
+	
+	
+	private static void resolveSynsets(ContextUnit unit, Set<String> posSet){
+		Map<String, List<Concept>> synsets = unit.synsets;
+		if (synsets != null && synsets.keySet().containsAll(posSet))
+			return;
+		Map<String, List<Concept>> resolved = new HashMap<String, List<Concept>>();
+		if (synsets != null)
+			resolved.putAll(synsets);
+		String word = getLiteralString(unit);
+		for (String pos : posSet) {
+			if (!resolved.containsKey(pos))
+				resolved.put(pos, lookupSynsets(word, pos));
+		}
+		unit.synsets = resolved;
+	}
+	
+	
+	/**
+	 * Returns the synsets of a STRING context unit, resolving them if they have not been resolved yet.
+	 * @param keep if true, resolved synsets are kept in the unit
+	 */
+	private static List<Concept> getSynsets(ContextUnit unit, String pos, boolean keep){
+		Map<String, List<Concept>> synsets = unit.synsets;
+		if (synsets != null) {
+			List<Concept> concepts = synsets.get(pos);
+			if (concepts != null)
+				return concepts;
+		}
+		List<Concept> concepts = lookupSynsets(getLiteralString(unit), pos);
+		if (!keep)
+			return concepts;
+		// copied, as the map may be read by other threads
+		Map<String, List<Concept>> resolved = new HashMap<String, List<Concept>>();
+		if (synsets != null)
+			resolved.putAll(synsets);
+		resolved.put(pos, concepts);
+		unit.synsets = resolved;
+		return concepts;
+	}
+	
+	
+	private static List<Concept> lookupSynsets(String word, String pos){
+		synchronized (wordNetLock) {
+			return new ArrayList<Concept>(db.getAllConcepts(word, pos));
+		}
+	}
+	
+	
+	private static String getLiteralString(ContextUnit unit){
+		return unit.instance.asNode().getLiteral().getValue().toString();
+	}
 
 
 
@@ -769,25 +1349,25 @@ public class Matcher {
 	 * @return
 	 */
 	private double mongeElkanSimilarity(String inputStr, String decompString) {
-		AbstractStringMetric metric = new MongeElkan();
+		AbstractStringMetric metric = StringMetrics.getMetric(StringSimilarity.MONGE_ELKAN);
 		double sim = metric.getSimilarity(inputStr, decompString);
 		return sim;
 	}
 	
 	private double jaroWinklerSimilarity(String inputStr, String decompString) {
-		AbstractStringMetric metric = new JaroWinkler();
+		AbstractStringMetric metric = StringMetrics.getMetric(StringSimilarity.JARO_WINKLER);
 		double sim = metric.getSimilarity(inputStr, decompString);
 		return sim;
 	}
 	
 	private double jaroSimilarity(String inputStr, String decompString) {
-		AbstractStringMetric metric = new Jaro();
+		AbstractStringMetric metric = StringMetrics.getMetric(StringSimilarity.JARO);
 		double sim = metric.getSimilarity(inputStr, decompString);
 		return sim;
 	}
 	
 	private double levenstheinSimilarity(String inputStr, String decompString) {
-		AbstractStringMetric metric = new Levenshtein();
+		AbstractStringMetric metric = StringMetrics.getMetric(StringSimilarity.LEVENSTHEIN);
 		double sim = metric.getSimilarity(inputStr, decompString);
 		return sim;
 	}
@@ -796,22 +1376,17 @@ public class Matcher {
 	
 	
 	/**
-	 * Compute geographic distance with the haversine formula.
-	 * Earth radius expressed in Km.
-	 * @param lat1
-	 * @param lng1
-	 * @param lat2
-	 * @param lng2
+	 * Haversine distance between two GEO units, w/ pre-parsed payload.
 	 * @return distance in Km
 	 */
-	private double haversineDistance (double lat1, double lng1, double lat2, double lng2) {
+	private double haversineDistance (ContextUnit unit1, ContextUnit unit2) {
 	    double earthRadius = 6371; // Km
-	    double dLat = Math.toRadians(lat2-lat1);
-	    double dLng = Math.toRadians(lng2-lng1);
+	    double dLat = unit2.latRad - unit1.latRad;
+	    double dLng = unit2.lonRad - unit1.lonRad;
 	    double sindLat = Math.sin(dLat / 2);
 	    double sindLng = Math.sin(dLng / 2);
-	    double a = Math.pow(sindLat, 2) + Math.pow(sindLng, 2)
-	            * Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2));
+	    double a = sindLat * sindLat + sindLng * sindLng
+	            * unit1.cosLat * unit2.cosLat;
 	    double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
 	    double dist = earthRadius * c;
 
@@ -0,0 +1,262 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+
+/**
+ * Immutable search parameters.
+ * A configuration is loaded once (e.g. from config.properties w/ getDefault()), 
+ * then passed to a SelectionEngine or a Matcher. 
+ * Per-tenant or per-search variants are derived w/ the with...() methods, 
+ * which return a modified copy: configurations can thus be shared among threads.
+ */
+public class PrissmaConfig {
+
+	public static final String DEFAULT_FILE = "config.properties";
+	
+	// PRISSMA search algorithm matching threshold [0,1] (0 = perfect match)
+	public final double threshold;
+	// costs of missing RDF entities and string literals [0,1]
+	public final double missingCtxUnitEntityCost;
+	public final double missingCtxUnitStringCost;
+	// decay constants of the substitution edit operations on time and location
+	public final double decayConstantTime;
+	public final double decayConstantGeo;
+	public final StringSimilarity stringSimilarity;
+	// threads used to match decomposition context units against input (1 = sequential)
+	public final int ctxUnitMatchingParallelism;
+	// skip substitution candidates that can never be selected (search results do not change)
+	public final boolean pruneCandidates;
+	// max number of memoized string similarity scores (0 = no cache)
+	public final int stringSimilarityCacheSize;
+	// stop semantic similarity evaluation as soon as the max score is reached (scores do not change)
+	public final boolean semanticSimilarityBounded;
+	
+	private static PrissmaConfig defaultConfig;
+	
+	private static Logger LOG = LoggerFactory.getLogger(PrissmaConfig.class);
+	
+	
+	private PrissmaConfig(Builder builder) {
+		if (builder.stringSimilarity == null)
+			throw new IllegalArgumentException("String similarity measure cannot be null");
+		this.threshold = builder.threshold;
+		this.missingCtxUnitEntityCost = builder.missingCtxUnitEntityCost;
+		this.missingCtxUnitStringCost = builder.missingCtxUnitStringCost;
+		this.decayConstantTime = builder.decayConstantTime;
+		this.decayConstantGeo = builder.decayConstantGeo;
+		this.stringSimilarity = builder.stringSimilarity;
+		this.ctxUnitMatchingParallelism = builder.ctxUnitMatchingParallelism;
+		this.pruneCandidates = builder.pruneCandidates;
+		this.stringSimilarityCacheSize = builder.stringSimilarityCacheSize;
+		this.semanticSimilarityBounded = builder.semanticSimilarityBounded;
+	}
+	
+	
+	/**
+	 * Returns the configuration w/ the default values of PrissmaProperties.
+	 * @return
+	 */
+	public static PrissmaConfig fromProperties(){
+		Builder builder = new Builder();
+		builder.threshold = PrissmaProperties.THRESHOLD;
+		builder.missingCtxUnitEntityCost = PrissmaProperties.MISSING_CTXUNIT_ENTITY_COST;
+		builder.missingCtxUnitStringCost = PrissmaProperties.MISSING_CTXUNIT_STRING_COST;
+		builder.decayConstantTime = PrissmaProperties.DECAY_CONSTANT_TIME;
+		builder.decayConstantGeo = PrissmaProperties.DECAY_CONSTANT_GEO;
+		builder.stringSimilarity = PrissmaProperties.STRING_SIMILARITY;
+		builder.ctxUnitMatchingParallelism = PrissmaProperties.CTXUNIT_MATCHING_PARALLELISM;
+		builder.pruneCandidates = PrissmaProperties.PRUNE_CANDIDATES;
+		builder.stringSimilarityCacheSize = PrissmaProperties.STRING_SIMILARITY_CACHE_SIZE;
+		builder.semanticSimilarityBounded = PrissmaProperties.SEMANTIC_SIMILARITY_BOUNDED;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	/**
+	 * Returns the configuration read from config.properties. 
+	 * The file is read only once, at the first call. 
+	 * If it cannot be read, the default values of PrissmaProperties are used. 
+	 * @return
+	 */
+	public static synchronized PrissmaConfig getDefault(){
+		if (defaultConfig == null){
+			try {
+				defaultConfig = load(DEFAULT_FILE);
+			} catch (ConfigurationException e) {
+				LOG.error("Error reading property file {}", e.getMessage());
+				defaultConfig = fromProperties();
+			}
+		}
+		return defaultConfig;
+	}
+	
+	
+	/**
+	 * Reads a configuration from a property file. 
+	 * Missing properties keep the default values of PrissmaProperties.
+	 * @param fileName
+	 * @return
+	 * @throws ConfigurationException if the file cannot be read
+	 */
+	public static PrissmaConfig load(String fileName) throws ConfigurationException {
+		Builder builder = new Builder(fromProperties());
+		Configuration config = new PropertiesConfiguration(fileName);
+		
+		String measure = config.getString("string_similarity");
+		if (measure != null){
+			try {
+				builder.stringSimilarity = StringSimilarity.valueOf(measure.trim());
+			} catch (IllegalArgumentException e) {
+				LOG.error("Similarity measure not supported");
+			}
+		}
+		
+		builder.threshold = config.getDouble("threshold", builder.threshold);
+		builder.missingCtxUnitEntityCost = config.getDouble("missing_ctxunit_entity_cost", builder.missingCtxUnitEntityCost);
+		builder.missingCtxUnitStringCost = config.getDouble("missing_ctxunit_string_cost", builder.missingCtxUnitStringCost);
+		builder.decayConstantTime = config.getDouble("decay_constant_time", builder.decayConstantTime);
+		builder.decayConstantGeo = config.getDouble("decay_constant_geo", builder.decayConstantGeo);
+		builder.ctxUnitMatchingParallelism = config.getInt("ctxunit_matching_parallelism", builder.ctxUnitMatchingParallelism);
+		builder.pruneCandidates = config.getBoolean("prune_candidates", builder.pruneCandidates);
+		builder.stringSimilarityCacheSize = config.getInt("string_similarity_cache_size", builder.stringSimilarityCacheSize);
+		builder.semanticSimilarityBounded = config.getBoolean("semantic_similarity_bounded", builder.semanticSimilarityBounded);
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withThreshold(double threshold){
+		Builder builder = new Builder(this);
+		builder.threshold = threshold;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withMissingCtxUnitEntityCost(double missingCtxUnitEntityCost){
+		Builder builder = new Builder(this);
+		builder.missingCtxUnitEntityCost = missingCtxUnitEntityCost;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withMissingCtxUnitStringCost(double missingCtxUnitStringCost){
+		Builder builder = new Builder(this);
+		builder.missingCtxUnitStringCost = missingCtxUnitStringCost;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withDecayConstantTime(double decayConstantTime){
+		Builder builder = new Builder(this);
+		builder.decayConstantTime = decayConstantTime;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withDecayConstantGeo(double decayConstantGeo){
+		Builder builder = new Builder(this);
+		builder.decayConstantGeo = decayConstantGeo;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withStringSimilarity(StringSimilarity stringSimilarity){
+		Builder builder = new Builder(this);
+		builder.stringSimilarity = stringSimilarity;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withCtxUnitMatchingParallelism(int ctxUnitMatchingParallelism){
+		Builder builder = new Builder(this);
+		builder.ctxUnitMatchingParallelism = ctxUnitMatchingParallelism;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withPruneCandidates(boolean pruneCandidates){
+		Builder builder = new Builder(this);
+		builder.pruneCandidates = pruneCandidates;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withStringSimilarityCacheSize(int stringSimilarityCacheSize){
+		Builder builder = new Builder(this);
+		builder.stringSimilarityCacheSize = stringSimilarityCacheSize;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	public PrissmaConfig withSemanticSimilarityBounded(boolean semanticSimilarityBounded){
+		Builder builder = new Builder(this);
+		builder.semanticSimilarityBounded = semanticSimilarityBounded;
+		return new PrissmaConfig(builder);
+	}
+	
+	
+	@Override
+	public String toString() {
+		return "threshold: " + threshold + ", string similarity: " + stringSimilarity 
+				+ ", missing costs: " + missingCtxUnitEntityCost + "/" + missingCtxUnitStringCost 
+				+ ", decay constants: " + decayConstantTime + "/" + decayConstantGeo;
+	}
+	
+	
+	/**
+	 * Mutable copy of a configuration, to change some values before creating a new one.
+	 */
+	private static class Builder {
+		private double threshold;
+		private double missingCtxUnitEntityCost;
+		private double missingCtxUnitStringCost;
+		private double decayConstantTime;
+		private double decayConstantGeo;
+		private StringSimilarity stringSimilarity;
+		private int ctxUnitMatchingParallelism;
+		private boolean pruneCandidates;
+		private int stringSimilarityCacheSize;
+		private boolean semanticSimilarityBounded;
+		
+		private Builder() {
+		}
+		
+		private Builder(PrissmaConfig config) {
+			this.threshold = config.threshold;
+			this.missingCtxUnitEntityCost = config.missingCtxUnitEntityCost;
+			this.missingCtxUnitStringCost = config.missingCtxUnitStringCost;
+			this.decayConstantTime = config.decayConstantTime;
+			this.decayConstantGeo = config.decayConstantGeo;
+			this.stringSimilarity = config.stringSimilarity;
+			this.ctxUnitMatchingParallelism = config.ctxUnitMatchingParallelism;
+			this.pruneCandidates = config.pruneCandidates;
+			this.stringSimilarityCacheSize = config.stringSimilarityCacheSize;
+			this.semanticSimilarityBounded = config.semanticSimilarityBounded;
+		}
+	}
+	
+}
@@ -31,8 +31,8 @@ public class PrissmaProperties {
 	// edit operation costs
 	public static final double MAX = 1;
 	public static final double MIN = 0;
-	public static double MISSING_CTXUNIT_ENTITY_COST = 1;
-	public static double MISSING_CTXUNIT_STRING_COST = MISSING_CTXUNIT_ENTITY_COST;
+	public static final double MISSING_CTXUNIT_ENTITY_COST = 1;
+	public static final double MISSING_CTXUNIT_STRING_COST = MISSING_CTXUNIT_ENTITY_COST;
 	
 	// decomposition constants
 	public static final int CTXUNIT_SUBJ = 1;
@@ -40,12 +40,25 @@ public class PrissmaProperties {
 	public static final int NO_CTXUNIT = 0;
 	public static final int NO_FILTER = -1;
 	
-	// matcher parameters
+	// matcher parameters (default values of PrissmaConfig, see PrissmaConfig.fromProperties(): 
+	// use PrissmaConfig.with...() to change them)
 	// THRESHOLD = 0: perfect match needed to find prism
-	public static double THRESHOLD = .6;
-	public static double DECAY_CONSTANT_TIME = 10;
-	public static double DECAY_CONSTANT_GEO = 5;
-	public static StringSimilarity STRING_SIMILARITY = StringSimilarity.MONGE_ELKAN;
+	public static final double THRESHOLD = .6;
+	public static final double DECAY_CONSTANT_TIME = 10;
+	public static final double DECAY_CONSTANT_GEO = 5;
+	public static final StringSimilarity STRING_SIMILARITY = StringSimilarity.MONGE_ELKAN;
+	// threads used to match decomposition context units against input (1 = sequential)
+	public static final int CTXUNIT_MATCHING_PARALLELISM = 1;
+	// skip substitution candidates that can never be selected (search results do not change)
+	public static final boolean PRUNE_CANDIDATES = true;
+	// max number of memoized string similarity scores (0 = no cache)
+	public static final int STRING_SIMILARITY_CACHE_SIZE = 100000;
+	// stop semantic similarity evaluation as soon as the max score is reached (scores do not change)
+	public static final boolean SEMANTIC_SIMILARITY_BOUNDED = true;
+	
+	// decomposition parameters
+	// default max number of triples of the reconstructed item graphs cached by a decomposition (see Decomposition(long))
+	public static final long RECONSTRUCTED_MODEL_CACHE_SIZE = 1000000;
 	
 	// Properties constants
 	public static final String DEFAULT = "http://example.org#";
@@ -93,7 +106,8 @@ public class PrissmaProperties {
 	public static final String INACTIVE_PRISMS_TEST = "inactive_prisms/";
 	
 	public static final String PRISM_PATH = "prisms/";
-	public static String ENTITIES_PATH = "entities/";
+	// default fresnel folder, see fresnel_folder in config.properties
+	public static final String ENTITIES_PATH = "entities/";
 	public static final String ACTUAL_CTX_PATH = "ctx/";
 //	public static final String PRISM_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() + "/PRISSMA/prisms/";
 //	public static final String ENTITIES_PATH = Environment.getExternalStorageDirectory().getAbsolutePath() +  "/PRISSMA/entities/";
@@ -0,0 +1,263 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
+import fr.inria.wimmics.prissma.selection.entities.Decomposition;
+import fr.inria.wimmics.prissma.selection.entities.PrismResult;
+import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+
+/**
+ * Thread-safe prism selection engine, built once per decomposition.
+ * The decomposition is shared by all searches and only read by them: 
+ * per-request state (candidates, winners, results, input graph and its class substitutions)
+ * lives in search sessions, i.e. Matcher instances created w/ newSession().
+ * Search parameters come from an immutable PrissmaConfig, given when the engine is created, 
+ * and can be overridden per search (e.g. per tenant) w/o affecting other searches.
+ * The indexes and WordNet synsets needed by the engine configuration are built w/ the engine: 
+ * searches w/ other parameters may build their GEO and TIME indexes on first use, w/o locking the decomposition.
+ * 
+ * The decomposition must not be modified (e.g. by Decomposer or removePrism) 
+ * while the engine is in use: create a new engine afterwards.
+ */
+public class SelectionEngine {
+
+	private final Decomposition decomp;
+	private final PrissmaConfig config;
+	
+	
+	/**
+	 * Creates an engine w/ the configuration read from config.properties (see PrissmaConfig.getDefault()).
+	 * @param decomp
+	 */
+	public SelectionEngine(Decomposition decomp) {
+		this(decomp, PrissmaConfig.getDefault());
+	}
+	
+	
+	public SelectionEngine(Decomposition decomp, PrissmaConfig config) {
+		if (decomp == null)
+			throw new IllegalArgumentException("Decomposition cannot be null");
+		if (config == null)
+			throw new IllegalArgumentException("Configuration cannot be null");
+		// lazily built indexes are built here, so that searches do not modify the decomposition
+		decomp.buildIndexes();
+		Matcher.prepare(decomp, config);
+		this.decomp = decomp;
+		this.config = config;
+	}
+	
+	
+	public Decomposition getDecomposition(){
+		return decomp;
+	}
+	
+	
+	public PrissmaConfig getConfig(){
+		return config;
+	}
+	
+	
+	/**
+	 * Creates a search session. Sessions are cheap and single-threaded: 
+	 * use one session per request (and per thread).
+	 * Input class substitutions are kept in the session, instead of the decomposition.
+	 * @return
+	 */
+	public Matcher newSession(){
+		return newSession(config);
+	}
+	
+	
+	/**
+	 * Creates a search session w/ its own search parameters, e.g. derived from getConfig() w/ PrissmaConfig.with...().
+	 * @param config
+	 * @return
+	 */
+	public Matcher newSession(PrissmaConfig config){
+		Matcher session = new Matcher(decomp, config);
+		session.substitutions = new HashMap<String, String>();
+		session.sharedDecomposition = true;
+		return session;
+	}
+	
+	
+	/**
+	 * Creates a search session that shares context unit substitution costs w/ other sessions, 
+	 * e.g. those of a batch of contexts (see searchBatch). 
+	 * Sessions sharing a cache must use the same configuration.
+	 * @param config
+	 * @param matchCache
+	 * @return
+	 */
+	public Matcher newSession(PrissmaConfig config, CtxUnitMatchCache matchCache){
+		Matcher session = newSession(config);
+		session.matchCache = matchCache;
+		return session;
+	}
+	
+	
+	/**
+	 * Searches the prisms matching an input context, in a new session. 
+	 * @param inputCtx the input context model. Its rdf:type triples are substituted (see ContextUnitConverter.switchToClasses)
+	 * @return the URIs of the selected prisms
+	 */
+	public Set<URI> search(Model inputCtx){
+		return search(inputCtx, config);
+	}
+	
+	
+	/**
+	 * Same as search(inputCtx), w/ the given search parameters instead of those of the engine.
+	 */
+	public Set<URI> search(Model inputCtx, PrissmaConfig config){
+		return search(ContextUnitConverter.getRootCtxNode(inputCtx), config);
+	}
+	
+	
+	/**
+	 * Searches the prisms matching an input context, in a new session.
+	 * @param inputCtxRoot the root node of the input context, whose model is modified
+	 * @return the URIs of the selected prisms
+	 */
+	public Set<URI> search(RDFNode inputCtxRoot){
+		return search(inputCtxRoot, config);
+	}
+	
+	
+	/**
+	 * Same as search(inputCtxRoot), w/ the given search parameters instead of those of the engine.
+	 */
+	public Set<URI> search(RDFNode inputCtxRoot, PrissmaConfig config){
+		Matcher session = newSession(config);
+		RDFNode root = ContextUnitConverter.switchToClasses(inputCtxRoot, session.substitutions);
+		session.search(root);
+		return session.results;
+	}
+	
+	
+	/**
+	 * Searches the k best prisms matching an input context, in a new session (see Matcher.search(RDFNode, int)).
+	 * @param inputCtx the input context model. Its rdf:type triples are substituted (see ContextUnitConverter.switchToClasses)
+	 * @param k number of prisms
+	 * @return the prisms w/ their cost, sorted by cost
+	 */
+	public List<PrismResult> search(Model inputCtx, int k){
+		return search(inputCtx, k, config);
+	}
+	
+	
+	/**
+	 * Same as search(inputCtx, k), w/ the given search parameters instead of those of the engine.
+	 */
+	public List<PrismResult> search(Model inputCtx, int k, PrissmaConfig config){
+		return search(ContextUnitConverter.getRootCtxNode(inputCtx), k, config);
+	}
+	
+	
+	/**
+	 * Same as search(inputCtx, k), w/ the root node of the input context and the given search parameters.
+	 */
+	public List<PrismResult> search(RDFNode inputCtxRoot, int k, PrissmaConfig config){
+		Matcher session = newSession(config);
+		RDFNode root = ContextUnitConverter.switchToClasses(inputCtxRoot, session.substitutions);
+		return session.search(root, k);
+	}
+		
+	
+	/**
+	 * Searches the prisms matching a batch of input contexts, w/ as many threads as available processors.
+	 * @param inputCtxs the input context models. Their rdf:type triples are substituted (see ContextUnitConverter.switchToClasses)
+	 * @return the URIs of the selected prisms of each context, in the same order of inputCtxs
+	 */
+	public List<Set<URI>> searchBatch(List<Model> inputCtxs){
+		return searchBatch(inputCtxs, config, Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+	/**
+	 * Searches the prisms matching a batch of input contexts.
+	 * Context unit substitution costs are shared by the searches: each decomposition context unit 
+	 * is matched once w/ each distinct input unit of the batch. 
+	 * Each context is then searched in its own session, on parallelism threads.
+	 * @param inputCtxs the input context models. Their rdf:type triples are substituted (see ContextUnitConverter.switchToClasses)
+	 * @param config search parameters
+	 * @param parallelism number of contexts searched at the same time (1 = sequential)
+	 * @return the URIs of the selected prisms of each context, in the same order of inputCtxs
+	 */
+	public List<Set<URI>> searchBatch(List<Model> inputCtxs, final PrissmaConfig config, int parallelism){
+		final CtxUnitMatchCache matchCache = new CtxUnitMatchCache();
+		List<Set<URI>> results = new ArrayList<Set<URI>>(inputCtxs.size());
+		if (parallelism <= 1 || inputCtxs.size() < 2){
+			for (Model inputCtx : inputCtxs)
+				results.add(search(inputCtx, config, matchCache));
+			return results;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, inputCtxs.size()));
+		List<Future<Set<URI>>> searches = new ArrayList<Future<Set<URI>>>(inputCtxs.size());
+		try {
+			for (final Model inputCtx : inputCtxs) {
+				searches.add(pool.submit(new Callable<Set<URI>>() {
+					@Override
+					public Set<URI> call() {
+						return search(inputCtx, config, matchCache);
+					}
+				}));
+			}
+			for (Future<Set<URI>> search : searches)
+				results.add(search.get());
+		} catch (InterruptedException e) {
+			for (Future<Set<URI>> search : searches)
+				search.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Batch search interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Batch search failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return results;
+	}
+	
+	
+	private Set<URI> search(Model inputCtx, PrissmaConfig config, CtxUnitMatchCache matchCache){
+		Matcher session = newSession(config, matchCache);
+		RDFNode root = ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(inputCtx), session.substitutions);
+		session.search(root);
+		return session.results;
+	}
+	
+}
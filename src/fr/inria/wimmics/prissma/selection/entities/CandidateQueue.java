@@ -0,0 +1,112 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.entities;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Global min-heap of et-subgraph isomorphism candidates of all decomposition items.
+ * Candidates are ordered by cost, then by decomposition item id, then by insertion order,
+ * so that ties are broken as in the former per-item sorted candidate lists.
+ */
+public class CandidateQueue {
+
+	public static class Entry {
+		public int itemId;
+		public ETSubgraphIsomorphism candidate;
+		private long seq;
+
+		private Entry(int itemId, ETSubgraphIsomorphism candidate, long seq) {
+			this.itemId = itemId;
+			this.candidate = candidate;
+			this.seq = seq;
+		}
+	}
+
+
+	private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			int c = e1.candidate.compareTo(e2.candidate);
+			if (c != 0)
+				return c;
+			if (e1.itemId != e2.itemId)
+				return e1.itemId < e2.itemId ? -1 : 1;
+			if (e1.seq != e2.seq)
+				return e1.seq < e2.seq ? -1 : 1;
+			return 0;
+		}
+	};
+
+	private PriorityQueue<Entry> heap;
+	private long seqCounter;
+
+
+	public CandidateQueue() {
+		this.heap = new PriorityQueue<Entry>(64, ENTRY_ORDER);
+		this.seqCounter = 0;
+	}
+
+
+	public void add(int itemId, ETSubgraphIsomorphism candidate){
+		heap.add(new Entry(itemId, candidate, seqCounter++));
+	}
+
+
+	public void addAll(int itemId, List<ETSubgraphIsomorphism> candidates){
+		for (ETSubgraphIsomorphism candidate : candidates)
+			add(itemId, candidate);
+	}
+
+
+	/**
+	 * Returns the cheapest candidate without removing it, or null if the queue is empty.
+	 */
+	public Entry peek(){
+		return heap.peek();
+	}
+
+
+	/**
+	 * Removes and returns the cheapest candidate, or null if the queue is empty.
+	 */
+	public Entry poll(){
+		return heap.poll();
+	}
+
+
+	public boolean isEmpty(){
+		return heap.isEmpty();
+	}
+
+
+	public int size(){
+		return heap.size();
+	}
+
+
+	public void clear(){
+		heap.clear();
+		seqCounter = 0;
+	}
+
+}
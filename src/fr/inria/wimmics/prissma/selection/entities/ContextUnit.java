@@ -20,6 +20,9 @@
 
 package fr.inria.wimmics.prissma.selection.entities;
 
+import java.util.List;
+import java.util.Map;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Period;
@@ -33,13 +36,28 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 
+import edu.cmu.lti.lexical_db.data.Concept;
+
 import fr.inria.wimmics.prissma.selection.PrissmaProperties;
 import fr.inria.wimmics.prissma.selection.exceptions.ContextUnitException;
+import fr.inria.wimmics.prissma.selection.utilities.NodeDictionary;
 
 public class ContextUnit{
 	
 	public CtxUnitType type;
 	public RDFNode instance;
+	
+	// only for STRING units: WordNet synsets by part of speech, resolved before semantic matching
+	public volatile Map<String, List<Concept>> synsets;
+	
+	// only for GEO and TIME units: pre-parsed payload, NaN if missing or malformed
+	public double lat = Double.NaN, lon = Double.NaN, radius = Double.NaN; // degrees, meters
+	public double latRad = Double.NaN, lonRad = Double.NaN, cosLat = Double.NaN;
+	public double start = Double.NaN, duration = Double.NaN; // seconds
+	private volatile boolean payloadParsed = false;
+	
+	// interned instance (root node for GEO and TIME units), used to hash and compare units
+	private volatile InternedInstance interned;
 
 	
 	public ContextUnit(CtxUnitType type) {
@@ -91,6 +109,67 @@ public class ContextUnit{
 	}
 
 
+	/**
+	 * Parses the payload of GEO and TIME units into primitive fields, 
+	 * so that matching does not need to read the instance model again.
+	 * Does nothing if the payload has already been parsed.
+	 */
+	public void parsePayload(){
+		if (payloadParsed)
+			return;
+		if (type == CtxUnitType.GEO)
+			setGeoPayload(getPayloadProp(PrissmaProperties.pLat), 
+					getPayloadProp(PrissmaProperties.pLon), 
+					getPayloadProp(PrissmaProperties.pRad));
+		else if (type == CtxUnitType.TIME)
+			setTimePayload(getPayloadProp(PrissmaProperties.pStart), 
+					getPayloadProp(PrissmaProperties.pDuration));
+		else
+			payloadParsed = true;
+	}
+	
+	
+	/**
+	 * Sets the parsed payload of a GEO unit, e.g. when read from a snapshot.
+	 * @param lat degrees
+	 * @param lon degrees
+	 * @param radius meters
+	 */
+	public void setGeoPayload(double lat, double lon, double radius){
+		this.lat = lat;
+		this.lon = lon;
+		this.radius = radius;
+		latRad = Math.toRadians(lat);
+		lonRad = Math.toRadians(lon);
+		cosLat = Math.cos(latRad);
+		payloadParsed = true;
+	}
+	
+	
+	/**
+	 * Sets the parsed payload of a TIME unit, e.g. when read from a snapshot.
+	 * @param start seconds
+	 * @param duration seconds
+	 */
+	public void setTimePayload(double start, double duration){
+		this.start = start;
+		this.duration = duration;
+		payloadParsed = true;
+	}
+	
+	
+	private double getPayloadProp(Property prop){
+		try {
+			return getComplexCtxUnitProp(prop);
+		} catch (ContextUnitException e) {
+			return Double.NaN;
+		} catch (RuntimeException e) {
+			// malformed literal
+			return Double.NaN;
+		}
+	}
+
+
 	@Override
 	public boolean equals(Object obj) {
 		
@@ -101,17 +180,20 @@ public class ContextUnit{
 		
 		if (this.type == unitToComp.type){
 			
-			if (this.type.equals(CtxUnitType.GEO) || this.type.equals(CtxUnitType.TIME)){
-				if (this.instance.getModel().containsAll(unitToComp.instance.getModel()))
-					return true;
-				else 
-					return false;
-			}
-			
-			if (this.instance.equals(unitToComp.instance))
-				return true;
-			else
+			// same id <=> same node (the root for GEO and TIME units)
+			if (this.getInstanceId() != unitToComp.getInstanceId())
 				return false;
+			
+			if (this.type == CtxUnitType.GEO || this.type == CtxUnitType.TIME){
+				// the same root may carry another payload in another graph: compare the parsed payloads (NaN if missing)
+				this.parsePayload();
+				unitToComp.parsePayload();
+				if (this.type == CtxUnitType.GEO)
+					return Double.compare(lat, unitToComp.lat) == 0 && Double.compare(lon, unitToComp.lon) == 0 
+							&& Double.compare(radius, unitToComp.radius) == 0;
+				return Double.compare(start, unitToComp.start) == 0 && Double.compare(duration, unitToComp.duration) == 0;
+			}
+			return true;
 		}
 			
 		else
@@ -119,6 +201,67 @@ public class ContextUnit{
 	}
 	
 	
+	/**
+	 * Returns the id of the instance node in the NodeDictionary, or -1 if there is no instance.
+	 * Equal units have equal ids.
+	 * @return
+	 */
+	public long getInstanceId(){
+		NodeDictionary.Entry entry = getInterned().entry;
+		return entry == null ? -1 : entry.id;
+	}
+	
+	
+	/**
+	 * Hash and length of toString(), used by Edge.hashCode().
+	 */
+	int getStringHash(){
+		return getInterned().stringHash;
+	}
+	
+	
+	int getStringLength(){
+		return getInterned().stringLength;
+	}
+	
+	
+	/**
+	 * Interns the instance at the first call, and again if the instance or the type are replaced.
+	 */
+	private InternedInstance getInterned(){
+		RDFNode node = instance;
+		CtxUnitType currentType = type;
+		InternedInstance current = interned;
+		if (current == null || current.instance != node || current.type != currentType){
+			current = new InternedInstance(node, currentType);
+			interned = current;
+		}
+		return current;
+	}
+	
+	
+	private static class InternedInstance {
+		private RDFNode instance;
+		private CtxUnitType type;
+		private NodeDictionary.Entry entry;
+		// string based hashes are kept as they were, as they determine the iteration order of hash sets.
+		// GEO and TIME units are hashed by root, which equal units share
+		private int hash;
+		private int stringHash;
+		private int stringLength;
+		
+		private InternedInstance(RDFNode instance, CtxUnitType type) {
+			this.instance = instance;
+			this.type = type;
+			this.entry = instance == null ? null : NodeDictionary.intern(instance.asNode());
+			this.hash = (type.toString() + instance).hashCode();
+			String str = instance + ", type: " + type;
+			this.stringHash = str.hashCode();
+			this.stringLength = str.length();
+		}
+	}
+	
+	
 	
 
 //	@Override
@@ -164,7 +307,7 @@ public class ContextUnit{
 	
 	
 	public int hashCode() {
-		return  new String(type.toString() + instance.toString()).hashCode();
+		return getInterned().hash;
 	}
 	
 }
@@ -45,6 +45,11 @@ public class DecompItem {
 	// only set for ctx units
 	public ContextUnit ctxUnit;
 	public boolean isCtxUnit; //FIXME remove: useless. (ctxUnit == null | ctxunit != null)
+	
+	// isomorphism-invariant hash of the item graph, set when the item is indexed by the decomposition
+	public long fingerprint;
+	// number of ctx units of the item graph (-1 if unknown), set when the item is indexed by the decomposition
+	public long size = -1;
 
 
 	public DecompItem(int id) {
@@ -19,9 +19,18 @@
 
 package fr.inria.wimmics.prissma.selection.entities;
 
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
@@ -29,7 +38,11 @@ import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 
+import fr.inria.wimmics.prissma.selection.PrissmaProperties;
 import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+import fr.inria.wimmics.prissma.selection.utilities.GeoIndex;
+import fr.inria.wimmics.prissma.selection.utilities.IntervalIndex;
+import fr.inria.wimmics.prissma.selection.utilities.MappedDecompositionStore;
 
 public class Decomposition {
 
@@ -40,10 +53,506 @@ public class Decomposition {
 	// put here to check if a ctxunit is of type CLASS
 	public Map<String, String> substitutions;
 	
+	// read-only backend: items are decoded from a mapped file when accessed
+	private MappedDecompositionStore store;
 	
+	// adjacency index: ancestor id -> ids of the items built on top of it
+	private Map<Integer, List<Integer>> descendants;
+	// ids of the ctx unit items
+	private List<Integer> ctxUnitIds;
+	// fingerprint index: graph fingerprint -> ids of the items w/ that fingerprint
+	private Map<Long, List<Integer>> fingerprints;
+	// containment index: triple (or ctx unit) key -> ids of the items whose graph contains it
+	private Map<Object, List<Integer>> containment;
+	private List<Integer> containmentKeyCounts;
+	// ids of the items whose graph could not be reconstructed, in no index
+	private List<Integer> unindexed;
+	// number of items in the adjacency index, and in the graph indexes (fingerprint, containment)
+	private int indexedCount;
+	private int graphIndexedCount;
+	
+	// reconstructed graphs of non-ctx unit items, LRU w/ a cap on the total number of triples
+	private final LinkedHashMap<Integer, ReconstructedItem> reconstructed;
+	private long reconstructedTriples;
+	private final long reconstructedModelCacheSize;
+	
+	// spatial indexes of GEO ctx units, by reach factor (i.e. by search configuration), read by concurrent searches
+	private final ConcurrentMap<Double, GeoIndex> geoIndexes;
+	private volatile int geoIndexedCount;
+	
+	// interval indexes of TIME ctx units, by decay horizon (i.e. by search configuration), read by concurrent searches
+	private final ConcurrentMap<Double, IntervalIndex> timeIndexes;
+	private volatile int timeIndexedCount;
+	
+	
+	/**
+	 * Creates a decomposition w/ the default cache size of reconstructed graphs 
+	 * (see PrissmaProperties.RECONSTRUCTED_MODEL_CACHE_SIZE).
+	 */
 	public Decomposition(){
+		this(PrissmaProperties.RECONSTRUCTED_MODEL_CACHE_SIZE);
+	}
+	
+	
+	/**
+	 * @param reconstructedModelCacheSize max number of triples of the reconstructed item graphs kept in memory (0 = no cache)
+	 */
+	public Decomposition(long reconstructedModelCacheSize){
 		this.elements = new ArrayList<DecompItem>();
 		idCounter = 0;
+		this.descendants = new HashMap<Integer, List<Integer>>();
+		this.ctxUnitIds = new ArrayList<Integer>();
+		this.fingerprints = new HashMap<Long, List<Integer>>();
+		this.containment = new HashMap<Object, List<Integer>>();
+		this.containmentKeyCounts = new ArrayList<Integer>();
+		this.unindexed = new ArrayList<Integer>();
+		this.indexedCount = 0;
+		this.graphIndexedCount = 0;
+		this.reconstructed = new LinkedHashMap<Integer, ReconstructedItem>(16, 0.75f, true);
+		this.reconstructedTriples = 0;
+		this.reconstructedModelCacheSize = reconstructedModelCacheSize;
+		this.geoIndexes = new ConcurrentHashMap<Double, GeoIndex>();
+		this.timeIndexes = new ConcurrentHashMap<Double, IntervalIndex>();
+	}
+	
+	
+	/**
+	 * Creates a read-only decomposition, whose items are stored in a mapped file.
+	 * Items are decoded at each access, thus they cannot be modified, 
+	 * and prisms cannot be added nor removed.
+	 * Indexes are read from the store, or built from its records, w/o decoding items.
+	 * @param store
+	 */
+	public Decomposition(MappedDecompositionStore store){
+		this(store, PrissmaProperties.RECONSTRUCTED_MODEL_CACHE_SIZE);
+	}
+	
+	
+	/**
+	 * Same as Decomposition(store), w/ the given cache size of reconstructed graphs (see Decomposition(long)).
+	 */
+	public Decomposition(MappedDecompositionStore store, long reconstructedModelCacheSize){
+		this(reconstructedModelCacheSize);
+		this.store = store;
+		this.elements = store;
+		this.idCounter = store.getIdCounter();
+		this.substitutions = store.getSubstitutions();
+	}
+	
+	
+	/**
+	 * Appends a new item to the decomposition and updates the indexes.
+	 * @param item
+	 */
+	public void addItem(DecompItem item){
+		elements.add(idCounter, item);
+		idCounter ++;
+		updateIndexes();
+	}
+	
+	
+	/**
+	 * Returns the ids of the items that have the given item as one of their two ancestors,
+	 * in decomposition order.
+	 * @param id
+	 * @return
+	 */
+	public List<Integer> getDescendants(int id){
+		if (store != null)
+			return store.getDescendants(id);
+		updateIndexes();
+		List<Integer> children = descendants.get(id);
+		if (children == null)
+			return Collections.emptyList();
+		return children;
+	}
+	
+	
+	/**
+	 * Returns the ancestor of an item other than the given one, w/o decoding read-only items.
+	 * @param id
+	 * @param ancestorId one of the two ancestors of the item
+	 * @return the other ancestor id, or ancestorId if the item has the same ancestor twice
+	 */
+	public int getOtherAncestorId(int id, int ancestorId){
+		int idAncestor1, idAncestor2;
+		if (store != null){
+			idAncestor1 = store.getAncestorId(id, 1);
+			idAncestor2 = store.getAncestorId(id, 2);
+		} else {
+			DecompItem item = elements.get(id);
+			idAncestor1 = item.idAncestor1;
+			idAncestor2 = item.idAncestor2;
+		}
+		return (idAncestor1 == ancestorId) ? idAncestor2 : idAncestor1;
+	}
+	
+	
+	/**
+	 * Returns the ids of the ctx unit items, in decomposition order.
+	 * @return
+	 */
+	public List<Integer> getCtxUnitItemIds(){
+		if (store != null)
+			return store.getCtxUnitItemIds();
+		updateIndexes();
+		return ctxUnitIds;
+	}
+	
+	
+	/**
+	 * Returns true if the items are stored in a mapped file (see Decomposition(MappedDecompositionStore)).
+	 * Each access to such items decodes a new instance. 
+	 * @return
+	 */
+	public boolean isReadOnly(){
+		return store != null;
+	}
+	
+	
+	/**
+	 * Builds the lazily updated indexes needed by the search.
+	 * Once built, searches only read the decomposition, which can then be shared 
+	 * by concurrent searches as long as it is not modified (see SelectionEngine).
+	 */
+	public void buildIndexes(){
+		if (store != null)
+			return;
+		updateIndexes();
+	}
+	
+	
+	/**
+	 * Adds the items appended since the last update to the adjacency index.
+	 * Items may also be appended directly to elements (e.g. in tests),
+	 * so indexes are updated lazily as well.
+	 */
+	private void updateIndexes(){
+		if (indexedCount > elements.size() || graphIndexedCount > elements.size()){
+			descendants.clear();
+			ctxUnitIds.clear();
+			fingerprints.clear();
+			containment.clear();
+			containmentKeyCounts.clear();
+			unindexed.clear();
+			clearReconstructedModels();
+			indexedCount = 0;
+			graphIndexedCount = 0;
+		}
+		for (int i = indexedCount; i < elements.size(); i++) {
+			DecompItem item = elements.get(i);
+			addDescendant(item.idAncestor1, item.id);
+			if (item.idAncestor2 != item.idAncestor1)
+				addDescendant(item.idAncestor2, item.id);
+			if (item.isCtxUnit)
+				ctxUnitIds.add(item.id);
+		}
+		indexedCount = elements.size();
+	}
+	
+	
+	/**
+	 * Adds the items appended since the last update to the graph indexes.
+	 * Graph indexes need the graph of each item, hence they are only built 
+	 * when the decomposition is searched by graph, i.e. while decomposing.
+	 */
+	private void updateGraphIndexes(){
+		updateIndexes();
+		for (int i = graphIndexedCount; i < elements.size(); i++)
+			indexGraph(elements.get(i));
+		graphIndexedCount = elements.size();
+	}
+	
+	
+	/**
+	 * Removes a prism from the decomposition.
+	 * The items that no longer belong to any prism, as prisms or as ancestors of prisms, are deleted
+	 * and the ids of the remaining items are compacted, keeping their relative order.
+	 * Only the ancestors of the removed prism are checked, hence the decomposition is 
+	 * assumed not to contain items that do not belong to any prism.
+	 * Must not be called while the decomposition is searched.
+	 * @param prismURI
+	 * @return false if the decomposition does not contain the prism
+	 */
+	public boolean removePrism(URI prismURI){
+		if (store != null)
+			throw new UnsupportedOperationException("Read-only decomposition");
+		updateIndexes();
+		List<Integer> prismItems = new ArrayList<Integer>();
+		for (int i = 0; i < elements.size(); i++) {
+			if (elements.get(i).prismURISet.remove(prismURI))
+				prismItems.add(i);
+		}
+		if (prismItems.isEmpty())
+			return false;
+		
+		// collect the ancestors of the prism: these are the only items that may be garbage
+		Set<Integer> ancestors = new HashSet<Integer>(prismItems);
+		List<Integer> toVisit = new ArrayList<Integer>(prismItems);
+		while (!toVisit.isEmpty()) {
+			DecompItem item = elements.get(toVisit.remove(toVisit.size() - 1));
+			if (isItemId(item.idAncestor1) && ancestors.add(item.idAncestor1))
+				toVisit.add(item.idAncestor1);
+			if (isItemId(item.idAncestor2) && ancestors.add(item.idAncestor2))
+				toVisit.add(item.idAncestor2);
+		}
+		// descendants come after their ancestors: an item is garbage if it is not a prism 
+		// and all its descendants are garbage
+		List<Integer> sorted = new ArrayList<Integer>(ancestors);
+		Collections.sort(sorted, Collections.reverseOrder());
+		boolean[] garbage = new boolean[elements.size()];
+		int garbageCount = 0;
+		for (int id : sorted) {
+			if (elements.get(id).isPrism())
+				continue;
+			boolean referenced = false;
+			for (int descendantId : getDescendants(id)) {
+				if (!garbage[descendantId]){
+					referenced = true;
+					break;
+				}
+			}
+			if (!referenced){
+				garbage[id] = true;
+				garbageCount++;
+			}
+		}
+		if (garbageCount > 0)
+			compact(garbage, garbageCount);
+		return true;
+	}
+	
+	
+	private boolean isItemId(int id){
+		return id >= 0 && id < elements.size();
+	}
+	
+	
+	/**
+	 * Deletes the given items and renumbers the others, remapping ancestors and indexes.
+	 * Cached graphs and indexed graph data do not depend on ids and are kept.
+	 */
+	private void compact(boolean[] garbage, int garbageCount){
+		int[] newIds = new int[elements.size()];
+		List<DecompItem> kept = new ArrayList<DecompItem>(elements.size() - garbageCount);
+		List<Integer> keptKeyCounts = new ArrayList<Integer>(elements.size() - garbageCount);
+		for (int i = 0; i < elements.size(); i++) {
+			if (garbage[i]){
+				newIds[i] = -1;
+				continue;
+			}
+			newIds[i] = kept.size();
+			kept.add(elements.get(i));
+			if (i < graphIndexedCount)
+				keptKeyCounts.add(containmentKeyCounts.get(i));
+		}
+		for (DecompItem item : kept) {
+			item.id = newIds[item.id];
+			item.idAncestor1 = remapId(item.idAncestor1, newIds);
+			item.idAncestor2 = remapId(item.idAncestor2, newIds);
+		}
+		
+		Map<Integer, List<Integer>> newDescendants = new HashMap<Integer, List<Integer>>();
+		for (Map.Entry<Integer, List<Integer>> entry : descendants.entrySet()) {
+			int id = remapId(entry.getKey(), newIds);
+			List<Integer> children = remapIds(entry.getValue(), newIds);
+			if (id >= 0 && !children.isEmpty())
+				newDescendants.put(id, children);
+		}
+		descendants = newDescendants;
+		ctxUnitIds = remapIds(ctxUnitIds, newIds);
+		remapIndex(fingerprints, newIds);
+		remapIndex(containment, newIds);
+		containmentKeyCounts = keptKeyCounts;
+		unindexed = remapIds(unindexed, newIds);
+		synchronized (reconstructed) {
+			// remapped in place, in LRU order: the map is also the lock of the cache
+			List<Integer> oldIds = new ArrayList<Integer>(reconstructed.keySet());
+			List<ReconstructedItem> cachedItems = new ArrayList<ReconstructedItem>(reconstructed.values());
+			reconstructed.clear();
+			reconstructedTriples = 0;
+			for (int i = 0; i < oldIds.size(); i++) {
+				int oldId = oldIds.get(i);
+				ReconstructedItem cached = cachedItems.get(i);
+				if (isItemId(oldId) && newIds[oldId] >= 0 && cached.item == elements.get(oldId)){
+					reconstructed.put(newIds[oldId], cached);
+					reconstructedTriples += cached.triples;
+				}
+			}
+		}
+		geoIndexes.clear();
+		timeIndexes.clear();
+		
+		elements = kept;
+		idCounter = kept.size();
+		indexedCount = kept.size();
+		graphIndexedCount = keptKeyCounts.size();
+	}
+	
+	
+	private static int remapId(int id, int[] newIds){
+		if (id < 0 || id >= newIds.length)
+			return id;
+		return newIds[id];
+	}
+	
+	
+	private static List<Integer> remapIds(List<Integer> ids, int[] newIds){
+		List<Integer> remapped = new ArrayList<Integer>(ids.size());
+		for (int id : ids) {
+			int newId = remapId(id, newIds);
+			if (newId >= 0)
+				remapped.add(newId);
+		}
+		return remapped;
+	}
+	
+	
+	private static <K> void remapIndex(Map<K, List<Integer>> index, int[] newIds){
+		Iterator<Map.Entry<K, List<Integer>>> it = index.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<K, List<Integer>> entry = it.next();
+			List<Integer> ids = remapIds(entry.getValue(), newIds);
+			if (ids.isEmpty())
+				it.remove();
+			else
+				entry.setValue(ids);
+		}
+	}
+	
+	
+	/**
+	 * Returns the spatial index of the GEO context units of the decomposition.
+	 * Each unit is indexed w/ its radius multiplied by reachFactor, 
+	 * i.e. the distance beyond which its substitution cost is too high to be considered.
+	 * Indexes are kept for each reach factor, and rebuilt if items were added.
+	 * Concurrent searches may build the index of a new reach factor at the same time: the first one is kept.
+	 * @param reachFactor
+	 * @return
+	 */
+	public GeoIndex getGeoIndex(double reachFactor){
+		if (geoIndexedCount != elements.size()){
+			geoIndexes.clear();
+			geoIndexedCount = elements.size();
+		}
+		GeoIndex geoIndex = geoIndexes.get(reachFactor);
+		if (geoIndex != null)
+			return geoIndex;
+		GeoIndex index = new GeoIndex();
+		for (int id : getCtxUnitItemIds()) {
+			double lat, lon, radius;
+			if (store != null){
+				if (store.getCtxUnitType(id) != CtxUnitType.GEO)
+					continue;
+				lat = store.getPayload(id, 0);
+				lon = store.getPayload(id, 1);
+				radius = store.getPayload(id, 2);
+			} else {
+				ContextUnit unit = elements.get(id).ctxUnit;
+				if (unit == null || unit.type != CtxUnitType.GEO)
+					continue;
+				unit.parsePayload();
+				lat = unit.lat;
+				lon = unit.lon;
+				radius = unit.radius;
+			}
+			// incomplete units (NaN) are returned by every query
+			index.add(id, lat, lon, radius / 1000 * reachFactor); // Km
+		}
+		geoIndex = geoIndexes.putIfAbsent(reachFactor, index);
+		return geoIndex == null ? index : geoIndex;
+	}
+	
+	
+	/**
+	 * Returns the interval index of the TIME context units of the decomposition.
+	 * Each unit is indexed w/ its window [start, start + duration], 
+	 * enlarged on both sides by horizon * duration, 
+	 * i.e. the time beyond which its substitution cost is too high to be considered.
+	 * Indexes are kept for each horizon, and rebuilt if items were added (see getGeoIndex).
+	 * @param horizon
+	 * @return
+	 */
+	public IntervalIndex getTimeIndex(double horizon){
+		if (timeIndexedCount != elements.size()){
+			timeIndexes.clear();
+			timeIndexedCount = elements.size();
+		}
+		IntervalIndex timeIndex = timeIndexes.get(horizon);
+		if (timeIndex != null)
+			return timeIndex;
+		IntervalIndex index = new IntervalIndex();
+		for (int id : getCtxUnitItemIds()) {
+			double start, duration;
+			if (store != null){
+				if (store.getCtxUnitType(id) != CtxUnitType.TIME)
+					continue;
+				start = store.getPayload(id, 0);
+				duration = store.getPayload(id, 1);
+			} else {
+				ContextUnit unit = elements.get(id).ctxUnit;
+				if (unit == null || unit.type != CtxUnitType.TIME)
+					continue;
+				unit.parsePayload();
+				start = unit.start;
+				duration = unit.duration;
+			}
+			// incomplete units, and units w/ negative duration, are returned by every query
+			if (Double.isNaN(start) || !(duration >= 0))
+				index.add(id, Double.NaN, Double.NaN);
+			else {
+				// slightly enlarged, to be safe against rounding errors
+				double reach = horizon * duration + 1e-3;
+				index.add(id, start - reach, start + duration + reach);
+			}
+		}
+		index.build();
+		timeIndex = timeIndexes.putIfAbsent(horizon, index);
+		return timeIndex == null ? index : timeIndex;
+	}
+	
+	
+	private void indexGraph(DecompItem item){
+		RDFNode root;
+		Set<Object> keys;
+		try {
+			root = getReconstructedModel(item);
+			item.fingerprint = ContextUnitConverter.fingerprint(root);
+			item.size = ContextUnitConverter.getSize(root, substitutions.values());
+			keys = ContextUnitConverter.getContainmentKeys(root, false);
+		} catch (RuntimeException e) {
+			// e.g. dangling ancestor: the item is checked by every lookup
+			unindexed.add(item.id);
+			containmentKeyCounts.add(-1);
+			return;
+		}
+		addToIndex(fingerprints, item.fingerprint, item.id);
+		for (Object key : keys)
+			addToIndex(containment, key, item.id);
+		containmentKeyCounts.add(keys.size());
+	}
+	
+	
+	private static <K> void addToIndex(Map<K, List<Integer>> index, K key, int id){
+		List<Integer> ids = index.get(key);
+		if (ids == null){
+			ids = new ArrayList<Integer>(1);
+			index.put(key, ids);
+		}
+		ids.add(id);
+	}
+	
+	
+	private void addDescendant(int ancestorId, int id){
+		// ctx units have no ancestors
+		if (ancestorId < 0)
+			return;
+		List<Integer> children = descendants.get(ancestorId);
+		if (children == null){
+			children = new ArrayList<Integer>();
+			descendants.put(ancestorId, children);
+		}
+		children.add(id);
 	}
 
 
@@ -61,11 +570,76 @@ public class Decomposition {
 	}
 
 
+	/**
+	 * Returns the ids of the items whose graph is contained in g (see ContextUnitConverter.isSubgraphOf), 
+	 * in id order. Only the items whose containment keys all occur in g are checked.
+	 * @param g
+	 * @return
+	 */
+	public List<Integer> getSubgraphItems(RDFNode g){
+		updateGraphIndexes();
+		Map<Integer, Integer> hits = new HashMap<Integer, Integer>();
+		for (Object key : ContextUnitConverter.getContainmentKeys(g, true)) {
+			List<Integer> ids = containment.get(key);
+			if (ids == null)
+				continue;
+			for (int id : ids) {
+				Integer count = hits.get(id);
+				hits.put(id, count == null ? 1 : count + 1);
+			}
+		}
+		List<Integer> candidates = new ArrayList<Integer>(unindexed);
+		for (Map.Entry<Integer, Integer> hit : hits.entrySet()) {
+			if (hit.getValue().intValue() == containmentKeyCounts.get(hit.getKey()))
+				candidates.add(hit.getKey());
+		}
+		Collections.sort(candidates);
+		
+		List<Integer> subgraphItems = new ArrayList<Integer>();
+		for (int id : candidates) {
+			if (ContextUnitConverter.isSubgraphOf(getReconstructedModel(elements.get(id)), g))
+				subgraphItems.add(id);
+		}
+		return subgraphItems;
+	}
+	
+	
+	/**
+	 * Returns the number of ctx units of the item graph.
+	 * @param item
+	 * @return
+	 */
+	public long getItemSize(DecompItem item){
+		if (item.size < 0)
+			item.size = ContextUnitConverter.getSize(getReconstructedModel(item), substitutions.values());
+		return item.size;
+	}
+	
+	
+	/**
+	 * Returns the id of the first item isomorphic to the given graph, or -2 if there is none.
+	 * Only the items w/ the same fingerprint are checked for isomorphism.
+	 * @param sMax
+	 * @return
+	 */
 	public int getItem(RDFNode sMax) {
-		for (int i = 0; i < elements.size(); i++) {
-			RDFNode mItem = getReconstructedModel(elements.get(i));
+		if (sMax == null)
+			return -2;
+		updateGraphIndexes();
+		List<Integer> sameFingerprint = fingerprints.get(ContextUnitConverter.fingerprint(sMax));
+		if (sameFingerprint == null)
+			sameFingerprint = Collections.emptyList();
+		// merge w/ the items that have no fingerprint, in id order
+		int i = 0, j = 0;
+		while (i < sameFingerprint.size() || j < unindexed.size()){
+			int id;
+			if (j >= unindexed.size() || (i < sameFingerprint.size() && sameFingerprint.get(i) < unindexed.get(j)))
+				id = sameFingerprint.get(i++);
+			else
+				id = unindexed.get(j++);
+			RDFNode mItem = getReconstructedModel(elements.get(id));
 			if (ContextUnitConverter.areIsomorphic(mItem, sMax)){
-				return i;
+				return id;
 			}
 		}
 		return -2;
@@ -73,16 +647,74 @@ public class Decomposition {
 	
 	
 
+	/**
+	 * Returns the graph of an item, rebuilt from its edges and ancestors.
+	 * Graphs are cached and shared: callers must not modify the returned model.
+	 * @param item
+	 * @return
+	 */
 	public RDFNode getReconstructedModel(DecompItem item){
 		RDFNode root;
 		if(item.isCtxUnit){
 			root = item.ctxUnit.instance;
 		}else {
+			synchronized (reconstructed) {
+				ReconstructedItem cached = reconstructed.get(item.id);
+				// items replaced in elements are stale, read-only items are decoded again at each access
+				if (cached != null && (cached.item == item || store != null))
+					return cached.root;
+			}
 			root = reconstructRDFNodeForItem(item);
+			cacheReconstructedModel(item, root);
 		}
 		return root;
 	}
 	
+	
+	/**
+	 * Drops all the cached reconstructed graphs. 
+	 * Must be called when items are modified or removed.
+	 */
+	public void clearReconstructedModels(){
+		synchronized (reconstructed) {
+			reconstructed.clear();
+			reconstructedTriples = 0;
+		}
+	}
+	
+	
+	private void cacheReconstructedModel(DecompItem item, RDFNode root){
+		long triples = (root == null || root.getModel() == null) ? 0 : root.getModel().size();
+		if (triples > reconstructedModelCacheSize)
+			return;
+		synchronized (reconstructed) {
+			ReconstructedItem old = reconstructed.put(item.id, new ReconstructedItem(item, root, triples));
+			if (old != null)
+				reconstructedTriples -= old.triples;
+			reconstructedTriples += triples;
+			// evict least recently used graphs
+			Iterator<ReconstructedItem> it = reconstructed.values().iterator();
+			while (reconstructedTriples > reconstructedModelCacheSize && it.hasNext()){
+				reconstructedTriples -= it.next().triples;
+				it.remove();
+			}
+		}
+	}
+	
+	
+	private static class ReconstructedItem {
+		private DecompItem item;
+		private RDFNode root;
+		private long triples;
+		
+		private ReconstructedItem(DecompItem item, RDFNode root, long triples) {
+			this.item = item;
+			this.root = root;
+			this.triples = triples;
+		}
+	}
+	
+	
 	private RDFNode reconstructRDFNodeForItem(DecompItem item){
 		
 		if (item.isCtxUnit){
@@ -102,8 +734,8 @@ public class Decomposition {
 		}
 		
 		// get stuff from ancestors
-		RDFNode m1 = reconstructRDFNodeForItem(this.elements.get(item.idAncestor1));
-		RDFNode m2 = reconstructRDFNodeForItem(this.elements.get(item.idAncestor2));
+		RDFNode m1 = getReconstructedModel(this.elements.get(item.idAncestor1));
+		RDFNode m2 = getReconstructedModel(this.elements.get(item.idAncestor2));
 		
 		Model m1Model = m1.getModel();
 		Model m2Model = m2.getModel();
@@ -20,18 +20,90 @@
 package fr.inria.wimmics.prissma.selection.entities;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Error-tolerant subgraph isomorphism candidate.
+ * Candidates form a persistent DAG: a combined candidate references the two
+ * candidates it was built from, and only stores its own (local) edit operations.
+ * Combining is therefore linear in the number of connecting edges, and the
+ * complete edit path is materialized on demand with {@link #getEditPath()}.
+ */
 public class ETSubgraphIsomorphism implements Comparable<ETSubgraphIsomorphism>{
 
-	public List<EditOperation> deltaList;
+	private static final EditOperation[] NO_OPS = new EditOperation[0];
+
 	public double cost;
+	public ETSubgraphIsomorphism ancestor1;
+	public ETSubgraphIsomorphism ancestor2;
+	private EditOperation[] localOps;
+	private int localOpsCount;
+	private int editPathLength;
 	
 		
 	public ETSubgraphIsomorphism(){
-		this.deltaList = new ArrayList<EditOperation>();
+		this.localOps = NO_OPS;
+	}
+	
+	
+	/**
+	 * Creates a candidate combining two ancestor candidates.
+	 * Ancestors' edit operations are not copied.
+	 * @param ancestor1
+	 * @param ancestor2
+	 */
+	public ETSubgraphIsomorphism(ETSubgraphIsomorphism ancestor1, ETSubgraphIsomorphism ancestor2){
+		this();
+		this.ancestor1 = ancestor1;
+		this.ancestor2 = ancestor2;
+		this.editPathLength = ancestor1.editPathLength + ancestor2.editPathLength;
 	}
 	
+	
+	/**
+	 * Appends a local edit operation to the candidate.
+	 * @param op
+	 */
+	public void addOperation(EditOperation op){
+		if (localOpsCount == localOps.length)
+			localOps = Arrays.copyOf(localOps, Math.max(2, localOpsCount * 2));
+		localOps[localOpsCount++] = op;
+		editPathLength++;
+	}
+	
+	
+	/**
+	 * Returns the number of edit operations of the complete edit path, 
+	 * without materializing it.
+	 */
+	public int getEditPathLength(){
+		return editPathLength;
+	}
+	
+	
+	/**
+	 * Materializes the complete edit path: the edit path of the first ancestor, 
+	 * the edit path of the second ancestor, then the local edit operations.
+	 * @return a new list of edit operations
+	 */
+	public List<EditOperation> getEditPath(){
+		List<EditOperation> path = new ArrayList<EditOperation>(editPathLength);
+		appendEditPath(path);
+		return path;
+	}
+	
+	
+	private void appendEditPath(List<EditOperation> path){
+		if (ancestor1 != null)
+			ancestor1.appendEditPath(path);
+		if (ancestor2 != null)
+			ancestor2.appendEditPath(path);
+		for (int i = 0; i < localOpsCount; i++)
+			path.add(localOps[i]);
+	}
+	
+	
 	@Override
 	public int compareTo(ETSubgraphIsomorphism o) {
 
@@ -45,7 +117,7 @@ public class ETSubgraphIsomorphism implements Comparable<ETSubgraphIsomorphism>{
 	
 	public String toString(){
 		return "cost: " + cost + 
-				". Deltalist: " + deltaList.toString() + "\n";
+				". Deltalist: " + getEditPath().toString() + "\n";
 	}
 	
 }
@@ -27,6 +27,8 @@ public class Edge {
 	public ContextUnit v2;
 	public Property label;
 	
+	private volatile LabelHash labelHash;
+	
 	public String toString(){
 		
 		return label + ", from: " + v1 + "to:" + v2; 
@@ -46,9 +48,47 @@ public class Edge {
 			return false;
 	}
 
+	/**
+	 * Same as (v1.toString() + v2.toString() + label.toString()).hashCode(), 
+	 * computed from the cached hashes of the parts instead of building the string.
+	 */
 	@Override
 	public int hashCode() {
-		return  new String(v1.toString() + v2.toString() + label.toString()).hashCode();
+		LabelHash currentLabelHash = labelHash;
+		if (currentLabelHash == null || currentLabelHash.label != label){
+			currentLabelHash = new LabelHash(label);
+			labelHash = currentLabelHash;
+		}
+		int hash = v1.getStringHash();
+		hash = hash * pow31(v2.getStringLength()) + v2.getStringHash();
+		hash = hash * pow31(currentLabelHash.length) + currentLabelHash.hash;
+		return hash;
+	}
+	
+	
+	private static int pow31(int exponent){
+		int result = 1, base = 31;
+		while (exponent > 0){
+			if ((exponent & 1) != 0)
+				result *= base;
+			base *= base;
+			exponent >>= 1;
+		}
+		return result;
+	}
+	
+	
+	private static class LabelHash {
+		private Property label;
+		private int hash;
+		private int length;
+		
+		private LabelHash(Property label) {
+			this.label = label;
+			String str = label.toString();
+			this.hash = str.hashCode();
+			this.length = str.length();
+		}
 	}
 	
 	
@@ -0,0 +1,49 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.entities;
+
+import java.net.URI;
+
+/**
+ * A prism selected by the search, w/ the cost of its best et-subgraph isomorphism.
+ */
+public class PrismResult implements Comparable<PrismResult>{
+
+	public URI prism;
+	public double cost;
+	
+	
+	public PrismResult(URI prism, double cost) {
+		this.prism = prism;
+		this.cost = cost;
+	}
+	
+	
+	@Override
+	public int compareTo(PrismResult o) {
+		return Double.compare(this.cost, o.cost);
+	}
+	
+	
+	public String toString(){
+		return prism + ", cost: " + cost;
+	}
+	
+}
@@ -32,6 +32,8 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
@@ -81,13 +83,25 @@ public class ContextUnitConverter {
 	 * @param RDFNode node
 	 */
 	public static RDFNode switchToClasses(RDFNode node, Decomposition decomp) {
+		decomp.substitutions = new HashMap<String, String>();
+		return switchToClasses(node, decomp.substitutions);
+	}
+	
+	
+	/**
+	 * Same as switchToClasses(node, decomp), but the substitutions are added to the given map 
+	 * instead of replacing those of a decomposition, e.g. to keep them in a search session.
+	 * @param node
+	 * @param substitutions entity URI to class URI map, filled by the method
+	 * @return the root node of the modified model
+	 */
+	public static RDFNode switchToClasses(RDFNode node, Map<String, String> substitutions) {
 		
 		//FIXME should check if entity has children, and if entity is not TIME nor GEO
 		
 		// detects all the rdf:type/a properties,
 		// associate the class to the instance in an external map
 		// and delete the triple.
-		decomp.substitutions = new HashMap<String, String>();
 		Model m = node.getModel();
 		StmtIterator it = m.listStatements( 
 				new SimpleSelector((Resource)null, PrissmaProperties.pType, (RDFNode) null) );
@@ -95,14 +109,14 @@ public class ContextUnitConverter {
 			Statement stmt = it.next();
 			Resource subj = stmt.getSubject();
 			Resource resClass = stmt.getObject().asResource();
-			decomp.substitutions.put(subj.getURI(), resClass.getURI());
+			substitutions.put(subj.getURI(), resClass.getURI());
 			it.remove();
 		}
 		
 		// substitute each element of the map 
 		// with its class everywhere in model
-		for (String entityURI : decomp.substitutions.keySet()) {
-			Resource classRes = ResourceFactory.createResource(decomp.substitutions.get(entityURI));
+		for (String entityURI : substitutions.keySet()) {
+			Resource classRes = ResourceFactory.createResource(substitutions.get(entityURI));
 			// subjects first
 			SimpleSelector selSubj = new SimpleSelector(ResourceFactory.createResource(entityURI), (Property) null, (RDFNode) null) ;
 			it = m.listStatements(selSubj);
@@ -168,12 +182,14 @@ public class ContextUnitConverter {
 		else if (containsOnlyInternalProp(gnode, PrissmaProperties.internalGEOProperties)){
 			ContextUnit cu = new ContextUnit(CtxUnitType.GEO);
 			cu.instance = gnode;
+			cu.parsePayload();
 			inputGraphContextUnits.add(cu);
 		} 		
 		// contains complex ctxunit (TIME )
 		else if (containsOnlyInternalProp(gnode, PrissmaProperties.internalTIMEProperties)){
 			ContextUnit cu = new ContextUnit(CtxUnitType.TIME);
 			cu.instance = gnode;
+			cu.parsePayload();
 			inputGraphContextUnits.add(cu);
 		}
 		
@@ -285,6 +301,7 @@ public class ContextUnitConverter {
 			if (radius != null)
 				m.add(poi.asResource(), PrissmaProperties.pRad, radius);
 			cuGeo.instance = getRoot(m, true);
+			cuGeo.parsePayload();
 			geoEdge.v2 = cuGeo;
 			inputGraphEdges.add(geoEdge);
 			inputGraphContextUnits.add(cuGeo);
@@ -297,6 +314,7 @@ public class ContextUnitConverter {
 			if (duration != null)
 				m.add(time.asResource(), PrissmaProperties.pDuration, duration);
 			cuTime.instance = getRoot(m, true);
+			cuTime.parsePayload();
 			timeEdge.v2 = cuTime;
 			inputGraphEdges.add(timeEdge);
 			inputGraphContextUnits.add(cuTime);
@@ -487,6 +505,142 @@ public class ContextUnitConverter {
 	
 	
 	
+	/**
+	 * Checks whether the graph of gElement is contained in the graph of g (triple-based).
+	 * A ctx unit is contained if it occurs in g.
+	 * @param gElement
+	 * @param g
+	 * @return
+	 */
+	public static boolean isSubgraphOf(RDFNode gElement, RDFNode g) {
+		boolean result = false;
+		Model gElementModel = gElement.getModel(); 
+		// if decomp element is ctxUnit
+		if (gElementModel == null || gElementModel.isEmpty()){
+			result = g.getModel().containsResource(gElement);
+			return result;
+		}
+		// if decompelement not ctxunit
+		if (g.getModel().containsAll(gElement.getModel()))
+			result = true;
+		return result;
+	}
+	
+	
+	/**
+	 * Returns the number of ctxUnit contained in a graph.
+	 * N.b: size != number of nodes (GEO ctx unit and TIME count as one even if they are
+	 * made of multiple nodes)
+	 * @param node
+	 * @return
+	 */
+	public static long getSize(RDFNode node, Collection<String> RDFclasses) {
+		
+		Model model = node.getModel();
+		if (model != null){
+			ContextUnitConverter converter = new ContextUnitConverter();
+			converter.convertInputToUnits(node, RDFclasses);
+			return converter.inputGraphContextUnits.size();
+		}
+		else
+			// is ctxUnit
+			return 1;
+	}
+	
+	
+	/**
+	 * Returns the keys used to index graph containment (see isSubgraphOf): 
+	 * if gElement is contained in g, all the keys of gElement are keys of g as well.
+	 * Keys of a graph are its triples, those of a ctx unit its node. 
+	 * Literals are matched by value, hence typed literals all share the same key.
+	 * @param g
+	 * @param withNodes if true, also adds the keys of all the nodes of the graph, as ctx units
+	 * @return
+	 */
+	public static Set<Object> getContainmentKeys(RDFNode g, boolean withNodes){
+		Set<Object> keys = new HashSet<Object>();
+		Model m = g.getModel();
+		if (m == null || m.isEmpty()){
+			keys.add(getContainmentKey(g.asNode()));
+			return keys;
+		}
+		StmtIterator it = m.listStatements();
+		while (it.hasNext()){
+			Triple t = it.next().asTriple();
+			Object s = getContainmentKey(t.getSubject());
+			Object p = getContainmentKey(t.getPredicate());
+			Object o = getContainmentKey(t.getObject());
+			keys.add(Arrays.asList(s, p, o));
+			if (withNodes){
+				keys.add(s);
+				keys.add(p);
+				keys.add(o);
+			}
+		}
+		return keys;
+	}
+	
+	
+	private static final String TYPED_LITERAL_KEY = "\"^^";
+	
+	private static Object getContainmentKey(Node n){
+		if (!n.isLiteral())
+			return n;
+		String datatype = n.getLiteralDatatypeURI();
+		if (datatype != null && !datatype.equals(PrissmaProperties.XSD + "string"))
+			return TYPED_LITERAL_KEY;
+		String lang = n.getLiteralLanguage();
+		return "\"" + n.getLiteralLexicalForm() + "\"@" + (lang == null ? "" : lang.toLowerCase());
+	}
+	
+	
+	
+	/**
+	 * Computes a hash of the graph of a node that does not change under isomorphism:
+	 * nodes that are isomorphic according to areIsomorphic() have the same fingerprint.
+	 * Graphs are hashed as the sum of their triple hashes, w/ all blank nodes hashed the same,
+	 * and literals hashed by value (as Jena matches them). Ctx units are hashed by node.
+	 * @param g
+	 * @return
+	 */
+	public static long fingerprint(RDFNode g){
+		Model m = g.getModel();
+		if (m == null || m.isEmpty())
+			return mix(CTXUNIT_FINGERPRINT_SEED + fingerprint(g.asNode()));
+		long fp = m.size();
+		StmtIterator it = m.listStatements();
+		while (it.hasNext()){
+			Triple t = it.next().asTriple();
+			long h = fingerprint(t.getSubject());
+			h = mix(h * 31 + fingerprint(t.getPredicate()));
+			h = mix(h * 31 + fingerprint(t.getObject()));
+			fp += h;
+		}
+		return fp;
+	}
+	
+	
+	private static final long CTXUNIT_FINGERPRINT_SEED = 0x9E3779B97F4A7C15L;
+	private static final long BLANK_NODE_FINGERPRINT = 0x5BD1E995L;
+	
+	private static long fingerprint(Node n){
+		if (n.isBlank())
+			return BLANK_NODE_FINGERPRINT;
+		return n.getIndexingValue().hashCode();
+	}
+	
+	// 64-bit finalizer of MurmurHash3
+	private static long mix(long h){
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	
+	
 	public static RDFNode getRootCtxNode(Model prismModel) {
 		RDFNode ctx = getSubjectForCoreProp(prismModel, PrissmaProperties.pUsr);
 		if ( ctx != null)
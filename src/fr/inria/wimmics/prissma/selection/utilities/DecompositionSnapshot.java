@@ -0,0 +1,449 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.rdf.model.impl.LiteralImpl;
+import com.hp.hpl.jena.rdf.model.impl.ModelCom;
+import com.hp.hpl.jena.rdf.model.impl.ResourceImpl;
+
+import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
+import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
+import fr.inria.wimmics.prissma.selection.entities.DecompItem;
+import fr.inria.wimmics.prissma.selection.entities.Decomposition;
+import fr.inria.wimmics.prissma.selection.entities.Edge;
+
+/**
+ * Binary snapshot of a decomposition, to be loaded at startup instead of decomposing all the prisms again.
+ * 
+ * Layout: magic, format version, body length, CRC32 of the body, body.
+ * The body starts w/ a dictionary of all the strings (URIs, literals, etc.), 
+ * referenced by index in the rest of the body: substitutions, then items 
+ * (ancestors, edges, ctx units w/ their parsed GEO and TIME payloads, prism URIs).
+ * 
+ * Snapshots written w/ another format version, or corrupted, are not read:
+ * callers must decompose the prisms again (see Decomposer.loadDecomposition).
+ * Indexes are not stored, they are rebuilt lazily.
+ */
+public class DecompositionSnapshot {
+
+	private static final int MAGIC = 0x50525353; // "PRSS"
+	public static final int VERSION = 1;
+	
+	private static final byte NODE_NULL = 0;
+	private static final byte NODE_URI = 1;
+	private static final byte NODE_BLANK = 2;
+	private static final byte NODE_LITERAL = 3;
+	private static final byte NO_UNIT = -1;
+	
+	private static final Comparator<Statement> STATEMENT_ORDER = new Comparator<Statement>() {
+		@Override
+		public int compare(Statement st1, Statement st2) {
+			return st1.asTriple().toString().compareTo(st2.asTriple().toString());
+		}
+	};
+	
+	private static final Logger LOG = LoggerFactory.getLogger(DecompositionSnapshot.class);
+	
+	
+	public static void write(Decomposition decomp, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(decomp, out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	
+	public static void write(Decomposition decomp, OutputStream out) throws IOException {
+		Dictionary dict = new Dictionary();
+		ByteArrayOutputStream itemBytes = new ByteArrayOutputStream();
+		DataOutputStream items = new DataOutputStream(itemBytes);
+		
+		items.writeInt(decomp.idCounter);
+		// substitutions are null until the first prism is decomposed
+		if (decomp.substitutions == null)
+			items.writeInt(-1);
+		else {
+			items.writeInt(decomp.substitutions.size());
+			for (Map.Entry<String, String> substitution : decomp.substitutions.entrySet()) {
+				items.writeInt(dict.id(substitution.getKey()));
+				items.writeInt(dict.id(substitution.getValue()));
+			}
+		}
+		items.writeInt(decomp.elements.size());
+		for (DecompItem item : decomp.elements) {
+			items.writeInt(item.id);
+			items.writeInt(item.idAncestor1);
+			items.writeInt(item.idAncestor2);
+			items.writeBoolean(item.isCtxUnit);
+			writeUnit(item.ctxUnit, items, dict);
+			items.writeInt(item.edges.size());
+			for (Edge edge : item.edges) {
+				items.writeInt(dict.id(edge.label.getURI()));
+				writeUnit(edge.v1, items, dict);
+				writeUnit(edge.v2, items, dict);
+			}
+			items.writeInt(item.prismURISet.size());
+			for (URI prismURI : item.prismURISet)
+				items.writeInt(dict.id(prismURI.toString()));
+		}
+		items.flush();
+		
+		ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(itemBytes.size() + 16 * dict.strings.size());
+		DataOutputStream body = new DataOutputStream(bodyBytes);
+		body.writeInt(dict.strings.size());
+		for (String str : dict.strings) {
+			byte[] utf8 = str.getBytes("UTF-8");
+			body.writeInt(utf8.length);
+			body.write(utf8);
+		}
+		itemBytes.writeTo(body);
+		body.flush();
+		
+		CRC32 crc = new CRC32();
+		crc.update(bodyBytes.toByteArray());
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		header.writeInt(bodyBytes.size());
+		header.writeLong(crc.getValue());
+		bodyBytes.writeTo(header);
+		header.flush();
+	}
+	
+	
+	/**
+	 * Reads a snapshot. 
+	 * @param file
+	 * @return the decomposition, or null if the file does not exist, 
+	 * has another format version or is corrupted.
+	 */
+	public static Decomposition read(File file) {
+		if (!file.isFile())
+			return null;
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				return read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot read decomposition snapshot " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * Reads a snapshot. 
+	 * @param in
+	 * @return the decomposition, or null if the snapshot has another format version or is corrupted.
+	 * @throws IOException
+	 */
+	public static Decomposition read(InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+		byte[] bodyBytes;
+		try {
+			if (header.readInt() != MAGIC){
+				LOG.warn("Not a decomposition snapshot.");
+				return null;
+			}
+			int version = header.readInt();
+			if (version != VERSION){
+				LOG.warn("Decomposition snapshot version " + version + " instead of " + VERSION + ".");
+				return null;
+			}
+			int length = header.readInt();
+			long checksum = header.readLong();
+			if (length < 0){
+				LOG.warn("Corrupted decomposition snapshot.");
+				return null;
+			}
+			bodyBytes = new byte[length];
+			header.readFully(bodyBytes);
+			CRC32 crc = new CRC32();
+			crc.update(bodyBytes);
+			if (crc.getValue() != checksum){
+				LOG.warn("Corrupted decomposition snapshot: checksum mismatch.");
+				return null;
+			}
+		} catch (EOFException e) {
+			LOG.warn("Corrupted decomposition snapshot: truncated.");
+			return null;
+		}
+		
+		// the body passed the checksum, hence any failure while decoding it is a format error
+		try {
+			return readBody(bodyBytes);
+		} catch (IOException e) {
+			LOG.warn("Corrupted decomposition snapshot: malformed body (" + e + ").");
+			return null;
+		} catch (RuntimeException e) {
+			LOG.warn("Corrupted decomposition snapshot: malformed body (" + e + ").");
+			return null;
+		}
+	}
+	
+	
+	private static Decomposition readBody(byte[] bodyBytes) throws IOException {
+		DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+		final String[] strings = new String[readSize(body, bodyBytes.length)];
+		for (int i = 0; i < strings.length; i++) {
+			byte[] utf8 = new byte[readSize(body, bodyBytes.length)];
+			body.readFully(utf8);
+			strings[i] = new String(utf8, "UTF-8");
+		}
+		StringTable dict = new StringTable() {
+			@Override
+			public String get(int id) {
+				return strings[id];
+			}
+		};
+		
+		Decomposition decomp = new Decomposition();
+		int idCounter = body.readInt();
+		int substitutionCount = body.readInt();
+		if (substitutionCount >= 0){
+			decomp.substitutions = new HashMap<String, String>();
+			for (int i = 0; i < substitutionCount; i++)
+				decomp.substitutions.put(dict.get(body.readInt()), dict.get(body.readInt()));
+		}
+		int itemCount = body.readInt();
+		try {
+			for (int i = 0; i < itemCount; i++) {
+				DecompItem item = new DecompItem(body.readInt());
+				item.idAncestor1 = body.readInt();
+				item.idAncestor2 = body.readInt();
+				item.isCtxUnit = body.readBoolean();
+				item.ctxUnit = readUnit(body, dict);
+				int edgeCount = body.readInt();
+				for (int j = 0; j < edgeCount; j++) {
+					Edge edge = new Edge();
+					edge.label = ResourceFactory.createProperty(dict.get(body.readInt()));
+					edge.v1 = readUnit(body, dict);
+					edge.v2 = readUnit(body, dict);
+					item.edges.add(edge);
+				}
+				int prismCount = body.readInt();
+				for (int j = 0; j < prismCount; j++)
+					item.prismURISet.add(new URI(dict.get(body.readInt())));
+				decomp.elements.add(item);
+			}
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid prism URI in decomposition snapshot", e);
+		}
+		decomp.idCounter = idCounter;
+		return decomp;
+	}
+	
+	
+	/**
+	 * Reads an array size, which cannot exceed the size of the body it is read from.
+	 */
+	private static int readSize(DataInputStream in, int max) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > max)
+			throw new IOException("Invalid size: " + size);
+		return size;
+	}
+	
+	
+	static void writeUnit(ContextUnit unit, DataOutputStream out, Dictionary dict) throws IOException {
+		if (unit == null){
+			out.writeByte(NO_UNIT);
+			return;
+		}
+		out.writeByte(unit.type.ordinal());
+		if (unit.type == CtxUnitType.GEO || unit.type == CtxUnitType.TIME){
+			// payload triples, then parsed payload
+			Model m = unit.instance == null ? null : unit.instance.getModel();
+			List<Statement> statements = new ArrayList<Statement>();
+			if (m != null){
+				StmtIterator it = m.listStatements();
+				while (it.hasNext())
+					statements.add(it.next());
+				// same snapshot for the same decomposition
+				Collections.sort(statements, STATEMENT_ORDER);
+			}
+			out.writeInt(statements.size());
+			for (Statement st : statements) {
+				writeNode(st.getSubject().asNode(), out, dict);
+				out.writeInt(dict.id(st.getPredicate().getURI()));
+				writeNode(st.getObject().asNode(), out, dict);
+			}
+			writeNode(unit.instance == null ? null : unit.instance.asNode(), out, dict);
+			unit.parsePayload();
+			if (unit.type == CtxUnitType.GEO){
+				out.writeDouble(unit.lat);
+				out.writeDouble(unit.lon);
+				out.writeDouble(unit.radius);
+			} else {
+				out.writeDouble(unit.start);
+				out.writeDouble(unit.duration);
+			}
+		} else
+			writeNode(unit.instance == null ? null : unit.instance.asNode(), out, dict);
+	}
+	
+	
+	static ContextUnit readUnit(DataInputStream in, StringTable dict) throws IOException {
+		byte type = in.readByte();
+		if (type == NO_UNIT)
+			return null;
+		if (type < 0 || type >= CtxUnitType.values().length)
+			throw new IOException("Unknown ctx unit type: " + type);
+		ContextUnit unit = new ContextUnit(CtxUnitType.values()[type]);
+		if (unit.type == CtxUnitType.GEO || unit.type == CtxUnitType.TIME){
+			Model m = ModelFactory.createDefaultModel();
+			int statementCount = in.readInt();
+			for (int i = 0; i < statementCount; i++) {
+				Node s = readNode(in, dict);
+				Node p = NodeFactory.createURI(dict.get(in.readInt()));
+				Node o = readNode(in, dict);
+				m.getGraph().add(new Triple(s, p, o));
+			}
+			Node instance = readNode(in, dict);
+			unit.instance = instance == null ? null : m.asRDFNode(instance);
+			if (unit.type == CtxUnitType.GEO)
+				unit.setGeoPayload(in.readDouble(), in.readDouble(), in.readDouble());
+			else
+				unit.setTimePayload(in.readDouble(), in.readDouble());
+		} else {
+			Node instance = readNode(in, dict);
+			// no model, as the nodes built by ResourceFactory
+			if (instance == null)
+				unit.instance = null;
+			else if (instance.isLiteral())
+				unit.instance = new LiteralImpl(instance, (ModelCom) null);
+			else
+				unit.instance = new ResourceImpl(instance, (ModelCom) null);
+		}
+		return unit;
+	}
+	
+	
+	private static void writeNode(Node node, DataOutputStream out, Dictionary dict) throws IOException {
+		if (node == null){
+			out.writeByte(NODE_NULL);
+		} else if (node.isURI()){
+			out.writeByte(NODE_URI);
+			out.writeInt(dict.id(node.getURI()));
+		} else if (node.isBlank()){
+			out.writeByte(NODE_BLANK);
+			out.writeInt(dict.id(node.getBlankNodeLabel()));
+		} else if (node.isLiteral()){
+			out.writeByte(NODE_LITERAL);
+			out.writeInt(dict.id(node.getLiteralLexicalForm()));
+			String lang = node.getLiteralLanguage();
+			out.writeInt(lang == null || lang.isEmpty() ? -1 : dict.id(lang));
+			String datatype = node.getLiteralDatatypeURI();
+			out.writeInt(datatype == null ? -1 : dict.id(datatype));
+		} else
+			throw new IOException("Cannot write node: " + node);
+	}
+	
+	
+	private static Node readNode(DataInputStream in, StringTable dict) throws IOException {
+		byte kind = in.readByte();
+		switch (kind) {
+		case NODE_NULL:
+			return null;
+		case NODE_URI:
+			return NodeFactory.createURI(dict.get(in.readInt()));
+		case NODE_BLANK:
+			return NodeFactory.createAnon(new AnonId(dict.get(in.readInt())));
+		case NODE_LITERAL:
+			String lex = dict.get(in.readInt());
+			int lang = in.readInt();
+			int datatype = in.readInt();
+			return NodeFactory.createLiteral(lex, lang < 0 ? "" : dict.get(lang), 
+					datatype < 0 ? null : TypeMapper.getInstance().getSafeTypeByName(dict.get(datatype)));
+		default:
+			throw new IOException("Unknown node kind: " + kind);
+		}
+	}
+	
+	
+	/**
+	 * Strings of a snapshot, by id.
+	 */
+	interface StringTable {
+		String get(int id);
+	}
+	
+	
+	/**
+	 * Strings of the snapshot being written, in order of first occurrence.
+	 */
+	static class Dictionary {
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		
+		int id(String str){
+			Integer id = ids.get(str);
+			if (id == null){
+				id = strings.size();
+				ids.put(str, id);
+				strings.add(str);
+			}
+			return id;
+		}
+	}
+	
+}
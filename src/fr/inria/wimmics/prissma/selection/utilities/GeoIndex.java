@@ -0,0 +1,149 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Grid index over circular areas (e.g. GEO context units and their reach).
+ * Each area is registered in all the lat/lon cells overlapped by its bounding box,
+ * so that the areas that may contain a point are found by looking up the point cell only.
+ * Areas whose bounding box spans too many cells (or crosses a pole) 
+ * are kept in a separate list, returned by every query.
+ */
+public class GeoIndex {
+
+	public static final double EARTH_RADIUS = 6371; // Km, as in the matcher haversine distance
+	public static final double DEFAULT_CELL_SIZE = 0.01; // degrees, ~1.1 Km in latitude
+	private static final int MAX_CELLS_PER_AREA = 1024;
+	// areas are slightly enlarged, to be safe against rounding errors
+	private static final double PADDING = 1e-6; // Km
+	
+	private double cellSize;
+	private long columns;
+	private Map<Long, List<Integer>> cells;
+	private List<Integer> oversized;
+	private int size;
+	
+	
+	public GeoIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+	
+	
+	public GeoIndex(double cellSize) {
+		this.cellSize = cellSize;
+		this.columns = (long) Math.ceil(360 / cellSize);
+		this.cells = new HashMap<Long, List<Integer>>();
+		this.oversized = new ArrayList<Integer>();
+		this.size = 0;
+	}
+	
+	
+	/**
+	 * Adds a circular area.
+	 * @param id
+	 * @param lat center latitude, degrees
+	 * @param lon center longitude, degrees
+	 * @param radius radius, Km. Areas w/ infinite or NaN radius (or center) are returned by every query.
+	 */
+	public void add(int id, double lat, double lon, double radius){
+		size++;
+		if (Double.isNaN(lat) || Double.isNaN(lon) || Double.isNaN(radius) || Double.isInfinite(radius)){
+			oversized.add(id);
+			return;
+		}
+		double angularRadius = (Math.max(radius, 0) + PADDING) / EARTH_RADIUS;
+		double dLat = Math.toDegrees(angularRadius);
+		double minLat = lat - dLat;
+		double maxLat = lat + dLat;
+		// bounding box in longitude, unless area crosses a pole
+		double sinRatio = Math.sin(angularRadius) / Math.cos(Math.toRadians(lat));
+		if (minLat <= -90 || maxLat >= 90 || angularRadius >= Math.PI / 2 || sinRatio >= 1){
+			oversized.add(id);
+			return;
+		}
+		double dLon = Math.toDegrees(Math.asin(sinRatio));
+		
+		long minRow = row(minLat), maxRow = row(maxLat);
+		long minCol = (long) Math.floor((lon - dLon + 180) / cellSize);
+		long maxCol = (long) Math.floor((lon + dLon + 180) / cellSize);
+		if ((maxRow - minRow + 1) * (maxCol - minCol + 1) > MAX_CELLS_PER_AREA){
+			oversized.add(id);
+			return;
+		}
+		for (long r = minRow; r <= maxRow; r++) {
+			for (long c = minCol; c <= maxCol; c++) {
+				long key = r * columns + column(c);
+				List<Integer> ids = cells.get(key);
+				if (ids == null){
+					ids = new ArrayList<Integer>(2);
+					cells.put(key, ids);
+				}
+				ids.add(id);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the ids of the areas that may contain the given point, in no particular order.
+	 * Areas actually containing the point are always returned.
+	 * @param lat
+	 * @param lon
+	 * @return
+	 */
+	public List<Integer> query(double lat, double lon){
+		if (Double.isNaN(lat) || Double.isNaN(lon))
+			return Collections.unmodifiableList(oversized);
+		long col = column((long) Math.floor((lon + 180) / cellSize));
+		List<Integer> ids = cells.get(row(lat) * columns + col);
+		if (ids == null)
+			return Collections.unmodifiableList(oversized);
+		if (oversized.isEmpty())
+			return Collections.unmodifiableList(ids);
+		List<Integer> result = new ArrayList<Integer>(ids.size() + oversized.size());
+		result.addAll(ids);
+		result.addAll(oversized);
+		return result;
+	}
+	
+	
+	public int size(){
+		return size;
+	}
+	
+	
+	private long row(double lat){
+		return (long) Math.floor((lat + 90) / cellSize);
+	}
+	
+	
+	// wraps columns around the antimeridian
+	private long column(long col){
+		long c = col % columns;
+		return c < 0 ? c + columns : c;
+	}
+	
+}
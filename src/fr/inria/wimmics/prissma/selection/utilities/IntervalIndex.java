@@ -0,0 +1,144 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Static interval tree, answering stabbing queries (all the intervals containing a point)
+ * in O(log n + k). Intervals are sorted by lower bound and the tree is implicit in the sorted array:
+ * each node is the middle of its range, and stores the max upper bound of the range.
+ * Intervals w/ NaN or infinite bounds are returned by every query.
+ */
+public class IntervalIndex {
+
+	private List<double[]> added;
+	private List<Integer> addedIds;
+	private List<Integer> unbounded;
+	
+	private int[] ids;
+	private double[] lows;
+	private double[] highs;
+	private double[] maxHighs;
+	private boolean built;
+	
+	
+	public IntervalIndex() {
+		this.added = new ArrayList<double[]>();
+		this.addedIds = new ArrayList<Integer>();
+		this.unbounded = new ArrayList<Integer>();
+		this.built = false;
+	}
+	
+	
+	/**
+	 * Adds the interval [low, high].
+	 * @param id
+	 * @param low
+	 * @param high
+	 */
+	public void add(int id, double low, double high){
+		if (Double.isNaN(low) || Double.isNaN(high) || Double.isInfinite(low) || Double.isInfinite(high)){
+			unbounded.add(id);
+			return;
+		}
+		added.add(new double[]{low, high});
+		addedIds.add(id);
+		built = false;
+	}
+	
+	
+	/**
+	 * Returns the ids of the intervals containing x, in no particular order.
+	 * @param x
+	 * @return
+	 */
+	public List<Integer> query(double x){
+		if (!built)
+			build();
+		List<Integer> result = new ArrayList<Integer>(unbounded);
+		if (!Double.isNaN(x))
+			query(0, ids.length, x, result);
+		return result;
+	}
+	
+	
+	public int size(){
+		return added.size() + unbounded.size();
+	}
+	
+	
+	private void query(int from, int to, double x, List<Integer> result){
+		while (from < to){
+			int mid = (from + to) >>> 1;
+			if (maxHighs[mid] < x)
+				return;
+			query(from, mid, x, result);
+			if (lows[mid] > x)
+				return;
+			if (highs[mid] >= x)
+				result.add(ids[mid]);
+			from = mid + 1;
+		}
+	}
+	
+	
+	/**
+	 * Builds the tree. Called by the first query after some intervals have been added,
+	 * it must be called explicitly before sharing the index between threads.
+	 */
+	public void build(){
+		int n = added.size();
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(added.get(i1)[0], added.get(i2)[0]);
+			}
+		});
+		ids = new int[n];
+		lows = new double[n];
+		highs = new double[n];
+		for (int i = 0; i < n; i++) {
+			ids[i] = addedIds.get(order[i]);
+			lows[i] = added.get(order[i])[0];
+			highs[i] = added.get(order[i])[1];
+		}
+		maxHighs = new double[n];
+		computeMaxHighs(0, n);
+		built = true;
+	}
+	
+	
+	private double computeMaxHighs(int from, int to){
+		if (from >= to)
+			return Double.NEGATIVE_INFINITY;
+		int mid = (from + to) >>> 1;
+		double max = Math.max(highs[mid], Math.max(computeMaxHighs(from, mid), computeMaxHighs(mid + 1, to)));
+		maxHighs[mid] = max;
+		return max;
+	}
+	
+}
@@ -0,0 +1,529 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
+import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
+import fr.inria.wimmics.prissma.selection.entities.DecompItem;
+import fr.inria.wimmics.prissma.selection.entities.Decomposition;
+import fr.inria.wimmics.prissma.selection.entities.Edge;
+import fr.inria.wimmics.prissma.selection.utilities.DecompositionSnapshot.Dictionary;
+import fr.inria.wimmics.prissma.selection.utilities.DecompositionSnapshot.StringTable;
+
+/**
+ * Read-only decomposition items, stored in a memory-mapped file: 
+ * processes that map the same file share it through the OS page cache.
+ * Use w/ new Decomposition(store).
+ * 
+ * Items are decoded from the file at each access, and are not kept: 
+ * the heap only holds the items a search is working on. 
+ * A search decodes the ctx unit items (see getCtxUnitItemIds()), then only the items it reaches. 
+ * What searches need about the other items (descendants, ctx unit types, GEO and TIME payloads) 
+ * is read from the records w/o decoding them.
+ * 
+ * Layout: a fixed-size header, then
+ * the string dictionary (offset table + UTF-8 data), 
+ * fixed-width item records (ids, ancestors, ctx unit, ranges in the edge and int tables, 
+ * ctx unit type and GEO or TIME payload), 
+ * fixed-width edge records, the int table (prism URIs and descendants of each item, ids of the ctx unit items), 
+ * ctx units (encoded as in DecompositionSnapshot) and substitutions.
+ * Offsets are ints, hence stores are limited to 2GB.
+ */
+public class MappedDecompositionStore extends AbstractList<DecompItem> {
+
+	private static final int MAGIC = 0x50524d53; // "PRMS"
+	public static final int VERSION = 2;
+	
+	private static final int HEADER_SIZE = 72;
+	private static final int ITEM_RECORD_SIZE = 72;
+	private static final int EDGE_RECORD_SIZE = 12;
+	private static final int NO_UNIT = -1;
+	
+	// item record fields, besides those read by get()
+	private static final int R_DESCENDANTS = 36;
+	private static final int R_UNIT_TYPE = 44;
+	private static final int R_PAYLOAD = 48;
+	private static final int PAYLOAD_FIELDS = 3;
+	
+	// header fields
+	private static final int H_ITEM_COUNT = 8;
+	private static final int H_ID_COUNTER = 12;
+	private static final int H_STRING_COUNT = 16;
+	private static final int H_SUBSTITUTION_COUNT = 20;
+	private static final int H_CHECKSUM = 24;
+	private static final int H_STRING_OFFSETS = 32;
+	private static final int H_STRING_DATA = 36;
+	private static final int H_ITEMS = 40;
+	private static final int H_EDGES = 44;
+	private static final int H_INTS = 48;
+	private static final int H_UNITS = 52;
+	private static final int H_SUBSTITUTIONS = 56;
+	private static final int H_END = 60;
+	private static final int H_CTX_UNIT_IDS = 64;
+	private static final int H_CTX_UNIT_COUNT = 68;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Logger LOG = LoggerFactory.getLogger(MappedDecompositionStore.class);
+	
+	private ByteBuffer buffer;
+	private int itemCount;
+	private int stringOffsetsPos, stringDataPos, itemsPos, edgesPos, intsPos, unitsPos;
+	private List<Integer> ctxUnitItemIds;
+	private AtomicLong decodedItemCount = new AtomicLong();
+	
+	private StringTable strings = new StringTable() {
+		@Override
+		public String get(int id) {
+			return getString(id);
+		}
+	};
+	
+	
+	private MappedDecompositionStore(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.itemCount = buffer.getInt(H_ITEM_COUNT);
+		this.stringOffsetsPos = buffer.getInt(H_STRING_OFFSETS);
+		this.stringDataPos = buffer.getInt(H_STRING_DATA);
+		this.itemsPos = buffer.getInt(H_ITEMS);
+		this.edgesPos = buffer.getInt(H_EDGES);
+		this.intsPos = buffer.getInt(H_INTS);
+		this.unitsPos = buffer.getInt(H_UNITS);
+		this.ctxUnitItemIds = Collections.unmodifiableList(readInts(buffer.getInt(H_CTX_UNIT_IDS), 
+				buffer.getInt(H_CTX_UNIT_COUNT)));
+	}
+	
+	
+	/**
+	 * Maps a store file.
+	 * @param file
+	 * @return the store, or null if the file has another format version or is corrupted.
+	 * @throws IOException
+	 */
+	public static MappedDecompositionStore open(File file) throws IOException {
+		MappedByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the file is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC){
+			LOG.warn("Not a decomposition store: " + file);
+			return null;
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION){
+			LOG.warn("Decomposition store version " + version + " instead of " + VERSION + ": " + file);
+			return null;
+		}
+		int end = buffer.getInt(H_END);
+		// the header is not in the checksum
+		long ctxUnitIdsEnd = buffer.getInt(H_INTS) + 4L * ((long) buffer.getInt(H_CTX_UNIT_IDS) + buffer.getInt(H_CTX_UNIT_COUNT));
+		if (end != buffer.capacity() || buffer.getInt(H_CTX_UNIT_IDS) < 0 || buffer.getInt(H_CTX_UNIT_COUNT) < 0 
+				|| ctxUnitIdsEnd > buffer.getInt(H_UNITS) || checksum(buffer, HEADER_SIZE, end) != buffer.getLong(H_CHECKSUM)){
+			LOG.warn("Corrupted decomposition store: " + file);
+			return null;
+		}
+		return new MappedDecompositionStore(buffer);
+	}
+	
+	
+	/**
+	 * Writes the items of a decomposition to a store file.
+	 * @param decomp
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(Decomposition decomp, File file) throws IOException {
+		Dictionary dict = new Dictionary();
+		ByteArrayOutputStream itemBytes = new ByteArrayOutputStream(decomp.elements.size() * ITEM_RECORD_SIZE);
+		ByteArrayOutputStream edgeBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream intBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream unitBytes = new ByteArrayOutputStream();
+		DataOutputStream items = new DataOutputStream(itemBytes);
+		DataOutputStream edges = new DataOutputStream(edgeBytes);
+		DataOutputStream ints = new DataOutputStream(intBytes);
+		DataOutputStream units = new DataOutputStream(unitBytes);
+		int edgeCount = 0, intCount = 0;
+		
+		for (DecompItem item : decomp.elements) {
+			items.writeInt(item.id);
+			items.writeInt(item.idAncestor1);
+			items.writeInt(item.idAncestor2);
+			items.writeInt(item.isCtxUnit ? 1 : 0);
+			items.writeInt(writeUnit(item.ctxUnit, units, dict));
+			items.writeInt(edgeCount);
+			items.writeInt(item.edges.size());
+			for (Edge edge : item.edges) {
+				edges.writeInt(dict.id(edge.label.getURI()));
+				edges.writeInt(writeUnit(edge.v1, units, dict));
+				edges.writeInt(writeUnit(edge.v2, units, dict));
+				edgeCount++;
+			}
+			items.writeInt(intCount);
+			items.writeInt(item.prismURISet.size());
+			for (URI prismURI : item.prismURISet) {
+				ints.writeInt(dict.id(prismURI.toString()));
+				intCount++;
+			}
+			List<Integer> descendants = decomp.getDescendants(item.id);
+			items.writeInt(intCount);
+			items.writeInt(descendants.size());
+			for (int descendantId : descendants) {
+				ints.writeInt(descendantId);
+				intCount++;
+			}
+			writePayload(item, items);
+		}
+		int ctxUnitIdStart = intCount;
+		List<Integer> ctxUnitIds = decomp.getCtxUnitItemIds();
+		for (int id : ctxUnitIds) {
+			ints.writeInt(id);
+			intCount++;
+		}
+		
+		ByteArrayOutputStream substitutionBytes = new ByteArrayOutputStream();
+		DataOutputStream substitutions = new DataOutputStream(substitutionBytes);
+		if (decomp.substitutions != null){
+			for (Map.Entry<String, String> substitution : decomp.substitutions.entrySet()) {
+				substitutions.writeInt(dict.id(substitution.getKey()));
+				substitutions.writeInt(dict.id(substitution.getValue()));
+			}
+		}
+		
+		ByteArrayOutputStream stringOffsetBytes = new ByteArrayOutputStream(4 * (dict.strings.size() + 1));
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		DataOutputStream stringOffsets = new DataOutputStream(stringOffsetBytes);
+		for (String str : dict.strings) {
+			stringOffsets.writeInt(stringBytes.size());
+			stringBytes.write(str.getBytes(UTF8));
+		}
+		stringOffsets.writeInt(stringBytes.size());
+		
+		// sections, in file order
+		ByteArrayOutputStream[] sections = {stringOffsetBytes, stringBytes, itemBytes, edgeBytes, intBytes, 
+				unitBytes, substitutionBytes};
+		int[] positions = new int[sections.length + 1];
+		long pos = HEADER_SIZE;
+		for (int i = 0; i < sections.length; i++) {
+			positions[i] = (int) pos;
+			pos += sections[i].size();
+		}
+		if (pos > Integer.MAX_VALUE)
+			throw new IOException("Decomposition too large for a store: " + pos + " bytes");
+		positions[sections.length] = (int) pos;
+		CRC32 crc = new CRC32();
+		for (ByteArrayOutputStream section : sections)
+			crc.update(section.toByteArray());
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(H_ITEM_COUNT, decomp.elements.size());
+		header.putInt(H_ID_COUNTER, decomp.idCounter);
+		header.putInt(H_STRING_COUNT, dict.strings.size());
+		header.putInt(H_SUBSTITUTION_COUNT, decomp.substitutions == null ? -1 : decomp.substitutions.size());
+		header.putLong(H_CHECKSUM, crc.getValue());
+		int[] positionFields = {H_STRING_OFFSETS, H_STRING_DATA, H_ITEMS, H_EDGES, H_INTS, H_UNITS, H_SUBSTITUTIONS, H_END};
+		for (int i = 0; i < positionFields.length; i++)
+			header.putInt(positionFields[i], positions[i]);
+		header.putInt(H_CTX_UNIT_IDS, ctxUnitIdStart);
+		header.putInt(H_CTX_UNIT_COUNT, ctxUnitIds.size());
+		
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(header.array());
+			for (ByteArrayOutputStream section : sections)
+				section.writeTo(out);
+		} finally {
+			out.close();
+		}
+	}
+	
+	
+	/**
+	 * Writes the ctx unit type of an item (-1 if none), and the GEO (lat, lon, radius) or TIME (start, duration) 
+	 * payload of its unit (NaN if none).
+	 */
+	private static void writePayload(DecompItem item, DataOutputStream items) throws IOException {
+		ContextUnit unit = item.isCtxUnit ? item.ctxUnit : null;
+		double[] payload = new double[PAYLOAD_FIELDS];
+		Arrays.fill(payload, Double.NaN);
+		if (unit != null && unit.type == CtxUnitType.GEO){
+			unit.parsePayload();
+			payload[0] = unit.lat;
+			payload[1] = unit.lon;
+			payload[2] = unit.radius;
+		} else if (unit != null && unit.type == CtxUnitType.TIME){
+			unit.parsePayload();
+			payload[0] = unit.start;
+			payload[1] = unit.duration;
+		}
+		items.writeInt(unit == null ? -1 : unit.type.ordinal());
+		for (double value : payload)
+			items.writeDouble(value);
+	}
+	
+	
+	private static int writeUnit(ContextUnit unit, DataOutputStream units, Dictionary dict) throws IOException {
+		if (unit == null)
+			return NO_UNIT;
+		int ref = units.size();
+		DecompositionSnapshot.writeUnit(unit, units, dict);
+		return ref;
+	}
+	
+	
+	/**
+	 * Returns an item, decoded from the file. 
+	 * Each call returns a new instance, owned by the caller.
+	 */
+	@Override
+	public DecompItem get(int index) {
+		checkIndex(index);
+		decodedItemCount.incrementAndGet();
+		int record = itemsPos + index * ITEM_RECORD_SIZE;
+		DecompItem item = new DecompItem(buffer.getInt(record));
+		item.idAncestor1 = buffer.getInt(record + 4);
+		item.idAncestor2 = buffer.getInt(record + 8);
+		item.isCtxUnit = buffer.getInt(record + 12) != 0;
+		item.ctxUnit = readUnit(buffer.getInt(record + 16));
+		int edgeStart = buffer.getInt(record + 20);
+		int edgeCount = buffer.getInt(record + 24);
+		for (int i = 0; i < edgeCount; i++) {
+			int edgeRecord = edgesPos + (edgeStart + i) * EDGE_RECORD_SIZE;
+			Edge edge = new Edge();
+			edge.label = ResourceFactory.createProperty(getString(buffer.getInt(edgeRecord)));
+			edge.v1 = readUnit(buffer.getInt(edgeRecord + 4));
+			edge.v2 = readUnit(buffer.getInt(edgeRecord + 8));
+			item.edges.add(edge);
+		}
+		int prismStart = buffer.getInt(record + 28);
+		int prismCount = buffer.getInt(record + 32);
+		for (int i = 0; i < prismCount; i++)
+			item.prismURISet.add(URI.create(getString(buffer.getInt(intsPos + 4 * (prismStart + i)))));
+		return item;
+	}
+	
+	
+	@Override
+	public int size() {
+		return itemCount;
+	}
+	
+	
+	/**
+	 * Returns the number of items decoded so far by get().
+	 */
+	public long getDecodedItemCount(){
+		return decodedItemCount.get();
+	}
+	
+	
+	/**
+	 * Returns the ids of the items that have the given item as one of their two ancestors,
+	 * in decomposition order.
+	 * @param id
+	 * @return
+	 */
+	public List<Integer> getDescendants(int id){
+		if (id < 0 || id >= itemCount)
+			return Collections.emptyList();
+		int record = itemsPos + id * ITEM_RECORD_SIZE;
+		return readInts(buffer.getInt(record + R_DESCENDANTS), buffer.getInt(record + R_DESCENDANTS + 4));
+	}
+	
+	
+	/**
+	 * Returns the first or the second ancestor id of an item, w/o decoding the item.
+	 * @param id
+	 * @param ancestor 1 or 2
+	 * @return
+	 */
+	public int getAncestorId(int id, int ancestor){
+		checkIndex(id);
+		if (ancestor != 1 && ancestor != 2)
+			throw new IllegalArgumentException("Ancestor: " + ancestor);
+		return buffer.getInt(itemsPos + id * ITEM_RECORD_SIZE + 4 * ancestor);
+	}
+	
+	
+	/**
+	 * Returns the ids of the ctx unit items, in decomposition order.
+	 */
+	public List<Integer> getCtxUnitItemIds(){
+		return ctxUnitItemIds;
+	}
+	
+	
+	/**
+	 * Returns the type of the ctx unit of a ctx unit item, or null if the item is not a ctx unit item.
+	 * @param id
+	 * @return
+	 */
+	public CtxUnitType getCtxUnitType(int id){
+		checkIndex(id);
+		int type = buffer.getInt(itemsPos + id * ITEM_RECORD_SIZE + R_UNIT_TYPE);
+		return type < 0 ? null : CtxUnitType.values()[type];
+	}
+	
+	
+	/**
+	 * Returns a field of the parsed payload of a GEO or TIME ctx unit item, w/o decoding the item.
+	 * @param id
+	 * @param field 0, 1, 2 for GEO lat, lon, radius; 0, 1 for TIME start, duration
+	 * @return the field value, NaN if missing
+	 */
+	public double getPayload(int id, int field){
+		checkIndex(id);
+		if (field < 0 || field >= PAYLOAD_FIELDS)
+			throw new IndexOutOfBoundsException("Payload field: " + field);
+		return buffer.getDouble(itemsPos + id * ITEM_RECORD_SIZE + R_PAYLOAD + 8 * field);
+	}
+	
+	
+	private void checkIndex(int index){
+		if (index < 0 || index >= itemCount)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + itemCount);
+	}
+	
+	
+	private List<Integer> readInts(int start, int count){
+		List<Integer> ints = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; i++)
+			ints.add(buffer.getInt(intsPos + 4 * (start + i)));
+		return ints;
+	}
+	
+	
+	public int getIdCounter(){
+		return buffer.getInt(H_ID_COUNTER);
+	}
+	
+	
+	/**
+	 * Returns a copy of the substitutions map of the decomposition (null if it had none).
+	 */
+	public Map<String, String> getSubstitutions(){
+		int count = buffer.getInt(H_SUBSTITUTION_COUNT);
+		if (count < 0)
+			return null;
+		int pos = buffer.getInt(H_SUBSTITUTIONS);
+		Map<String, String> substitutions = new HashMap<String, String>();
+		for (int i = 0; i < count; i++)
+			substitutions.put(getString(buffer.getInt(pos + 8 * i)), getString(buffer.getInt(pos + 8 * i + 4)));
+		return substitutions;
+	}
+	
+	
+	private String getString(int id){
+		int start = buffer.getInt(stringOffsetsPos + 4 * id);
+		int end = buffer.getInt(stringOffsetsPos + 4 * (id + 1));
+		byte[] utf8 = new byte[end - start];
+		// absolute reads only: the buffer is shared by concurrent readers
+		ByteBuffer view = buffer.duplicate();
+		view.position(stringDataPos + start);
+		view.get(utf8);
+		return new String(utf8, UTF8);
+	}
+	
+	
+	private ContextUnit readUnit(int ref){
+		if (ref == NO_UNIT)
+			return null;
+		ByteBuffer view = buffer.duplicate();
+		view.position(unitsPos + ref);
+		try {
+			return DecompositionSnapshot.readUnit(new DataInputStream(new BufferInputStream(view)), strings);
+		} catch (IOException e) {
+			throw new IllegalStateException("Corrupted decomposition store", e);
+		}
+	}
+	
+	
+	private static long checksum(ByteBuffer buffer, int start, int end){
+		CRC32 crc = new CRC32();
+		ByteBuffer view = buffer.duplicate();
+		view.position(start);
+		byte[] chunk = new byte[64 * 1024];
+		while (view.position() < end) {
+			int length = Math.min(chunk.length, end - view.position());
+			view.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+		return crc.getValue();
+	}
+	
+	
+	private static class BufferInputStream extends InputStream {
+		private ByteBuffer buffer;
+		
+		private BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+	
+}
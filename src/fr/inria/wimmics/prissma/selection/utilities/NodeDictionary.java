@@ -0,0 +1,113 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.graph.Node;
+
+/**
+ * Interns RDF nodes (URIs, blank nodes, literals) to long ids: 
+ * nodes are equal if and only if they have the same id.
+ * Entries are weak: an id is kept as long as its entry is referenced (e.g. by a context unit),
+ * so that the nodes of input contexts do not pile up across searches.
+ * Ids are never reused: they are longs, so that they do not wrap in long-running processes.
+ * The dictionary is shared by concurrent searches w/o locking: 
+ * threads interning equal nodes at the same time get the same entry.
+ */
+public class NodeDictionary {
+
+	public static final class Entry {
+		public final Node node;
+		public final long id;
+		
+		private Entry(Node node, long id) {
+			this.node = node;
+			this.id = id;
+		}
+	}
+	
+	
+	/**
+	 * Weak reference to an entry, w/ the key of its mapping, removed once the entry is collected.
+	 */
+	private static final class EntryRef extends WeakReference<Entry> {
+		private final Node key;
+		
+		private EntryRef(Node key, Entry entry) {
+			super(entry, collected);
+			this.key = key;
+		}
+	}
+	
+	
+	private static final ConcurrentMap<Node, EntryRef> entries = new ConcurrentHashMap<Node, EntryRef>();
+	private static final ReferenceQueue<Entry> collected = new ReferenceQueue<Entry>();
+	private static final AtomicLong idCounter = new AtomicLong();
+	
+	
+	/**
+	 * Returns the entry of the node, creating it if needed.
+	 * Callers must keep a reference to the entry for as long as they use its id.
+	 * @param node
+	 * @return
+	 */
+	public static Entry intern(Node node){
+		expungeCollectedEntries();
+		while (true) {
+			EntryRef ref = entries.get(node);
+			Entry entry = ref == null ? null : ref.get();
+			if (entry != null)
+				return entry;
+			// the mapping of a collected entry is replaced only if no other thread replaced it first
+			entry = new Entry(node, idCounter.getAndIncrement());
+			EntryRef newRef = new EntryRef(node, entry);
+			if (ref == null ? entries.putIfAbsent(node, newRef) == null : entries.replace(node, ref, newRef))
+				return entry;
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of interned nodes that are still referenced (approximate).
+	 */
+	public static int size(){
+		expungeCollectedEntries();
+		return entries.size();
+	}
+	
+	
+	/**
+	 * Removes the mappings of the collected entries, unless they were already replaced.
+	 */
+	private static void expungeCollectedEntries(){
+		Reference<? extends Entry> ref;
+		while ((ref = collected.poll()) != null) {
+			EntryRef entryRef = (EntryRef) ref;
+			entries.remove(entryRef.key, entryRef);
+		}
+	}
+	
+}
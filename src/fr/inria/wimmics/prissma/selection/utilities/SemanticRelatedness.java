@@ -0,0 +1,113 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.cmu.lti.lexical_db.data.Concept;
+import edu.cmu.lti.ws4j.RelatednessCalculator;
+
+/**
+ * Max relatedness between the synsets of two words, as used by semantic string similarity.
+ * Lin, Wu-Palmer and Path scores are bounded by MAX_SCORE, which is also the score of identical synsets.
+ * Hence the bounded evaluation first looks for synsets shared by both words,
+ * and stops as soon as a pair reaches the bound: no other pair can improve the max.
+ */
+public class SemanticRelatedness {
+
+	public static final double MAX_SCORE = 1.0;
+	
+	
+	/**
+	 * Relatedness of two synsets, e.g. computed by a RelatednessCalculator or read from a cache.
+	 */
+	public interface SynsetScorer {
+		double getScore(Concept synset1, Concept synset2);
+	}
+	
+	
+	/**
+	 * Computes the max relatedness between synsets1.get(i) and synsets2.get(i), for each i 
+	 * (one i for each POS pair of the calculator).
+	 * @param rc
+	 * @param synsets1 synsets of the first word, by POS pair
+	 * @param synsets2 synsets of the second word, by POS pair
+	 * @param bounded if true, stops as soon as MAX_SCORE is reached
+	 * @return the max score, or -1 if there is no synset pair
+	 */
+	public static double maxRelatedness(final RelatednessCalculator rc, List<List<Concept>> synsets1, 
+			List<List<Concept>> synsets2, boolean bounded){
+		return maxRelatedness(new SynsetScorer() {
+			@Override
+			public double getScore(Concept synset1, Concept synset2) {
+				return rc.calcRelatednessOfSynset(synset1, synset2).getScore();
+			}
+		}, synsets1, synsets2, bounded);
+	}
+	
+	
+	/**
+	 * Same as maxRelatedness(rc, synsets1, synsets2, bounded), w/ the synset pairs scored by scorer.
+	 */
+	public static double maxRelatedness(SynsetScorer scorer, List<List<Concept>> synsets1, 
+			List<List<Concept>> synsets2, boolean bounded){
+		
+		if (bounded && shareSynset(synsets1, synsets2))
+			return MAX_SCORE;
+		
+		double maxScore = -1D;
+		for (int i = 0; i < synsets1.size(); i++) {
+			for (Concept synset1 : synsets1.get(i)) {
+				for (Concept synset2 : synsets2.get(i)) {
+					double score = scorer.getScore(synset1, synset2);
+					if (score > maxScore) {
+						maxScore = score;
+						if (bounded && maxScore >= MAX_SCORE)
+							return maxScore;
+					}
+				}
+			}
+		}
+		return maxScore;
+	}
+	
+	
+	/**
+	 * Checks whether the words have an identical synset for the same POS pair.
+	 * No relatedness is computed.
+	 */
+	private static boolean shareSynset(List<List<Concept>> synsets1, List<List<Concept>> synsets2){
+		for (int i = 0; i < synsets1.size(); i++) {
+			if (synsets1.get(i).isEmpty() || synsets2.get(i).isEmpty())
+				continue;
+			Set<String> ids = new HashSet<String>();
+			for (Concept synset2 : synsets2.get(i))
+				ids.add(synset2.getSynset());
+			for (Concept synset1 : synsets1.get(i)) {
+				if (ids.contains(synset1.getSynset()))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,198 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+
+/**
+ * Size-bounded cache of string similarity scores, 
+ * keyed by (similarity measure, input string, decomposition string).
+ * Strings are used as they are: scores are not symmetric nor case insensitive 
+ * for all measures, hence cached scores are always those the measure would compute.
+ * The cache is split in segments, each one an LRU map guarded by its own lock,
+ * so that concurrent matching threads seldom contend.
+ */
+public class SimilarityCache {
+
+	private static final int SEGMENTS = 16;
+	
+	private Segment[] segments;
+	private int capacity;
+	
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+	
+	
+	/**
+	 * @param capacity maximum number of cached scores, split among the segments.
+	 */
+	public SimilarityCache(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		int segmentCount = Math.min(SEGMENTS, capacity);
+		this.segments = new Segment[segmentCount];
+		// the remainder is spread over the first segments, so that capacities sum up to capacity
+		for (int i = 0; i < segmentCount; i++)
+			segments[i] = new Segment(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+	}
+	
+	
+	/**
+	 * Returns the cached score, or null if the triple is not cached.
+	 */
+	public Double get(StringSimilarity method, String inputStr, String decompStr){
+		Key key = new Key(method, inputStr, decompStr);
+		Segment segment = segmentFor(key);
+		Double score;
+		synchronized (segment) {
+			score = segment.get(key);
+		}
+		if (score == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		return score;
+	}
+	
+	
+	public void put(StringSimilarity method, String inputStr, String decompStr, double score){
+		Key key = new Key(method, inputStr, decompStr);
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, score);
+		}
+	}
+	
+	
+	public void clear(){
+		for (Segment segment : segments){
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+	
+	
+	public int size(){
+		int size = 0;
+		for (Segment segment : segments){
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public long getEvictions() {
+		return evictions.get();
+	}
+	
+	
+	@Override
+	public String toString() {
+		return "size=" + size() + " capacity=" + capacity + " hits=" + getHits() 
+				+ " misses=" + getMisses() + " evictions=" + getEvictions();
+	}
+	
+	
+	private Segment segmentFor(Key key){
+		// spread hash bits, since segment count is small
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+	
+	
+	
+	private class Segment extends LinkedHashMap<Key, Double> {
+		
+		private static final long serialVersionUID = 1L;
+		private int maxEntries;
+		
+		Segment(int maxEntries) {
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+			if (size() > maxEntries){
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	
+	
+	private static class Key {
+		private StringSimilarity method;
+		private String inputStr;
+		private String decompStr;
+		private int hash;
+		
+		Key(StringSimilarity method, String inputStr, String decompStr) {
+			this.method = method;
+			this.inputStr = inputStr;
+			this.decompStr = decompStr;
+			this.hash = (method.ordinal() * 31 + inputStr.hashCode()) * 31 + decompStr.hashCode();
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && method == other.method 
+					&& inputStr.equals(other.inputStr) && decompStr.equals(other.decompStr);
+		}
+	}
+	
+}
@@ -0,0 +1,77 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.selection.utilities;
+
+import uk.ac.shef.wit.simmetrics.similaritymetrics.AbstractStringMetric;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Jaro;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.JaroWinkler;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Levenshtein;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.MongeElkan;
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+
+/**
+ * Provides reusable Simmetrics string metric instances.
+ * Metrics (and the tokenisers and sub-metrics they build, e.g. in MongeElkan)
+ * are created once per thread and per measure, instead of once per comparison.
+ * Simmetrics does not document its metrics as thread safe,
+ * hence instances are thread-confined.
+ */
+public class StringMetrics {
+
+	private static final ThreadLocal<AbstractStringMetric[]> metrics = new ThreadLocal<AbstractStringMetric[]>(){
+		@Override
+		protected AbstractStringMetric[] initialValue() {
+			return new AbstractStringMetric[StringSimilarity.values().length];
+		}
+	};
+
+
+	/**
+	 * Returns the metric of the current thread for the given edit distance based measure.
+	 * @param method
+	 * @return the metric, or null if the measure is not edit distance based (e.g. LIN)
+	 */
+	public static AbstractStringMetric getMetric(StringSimilarity method){
+		AbstractStringMetric[] threadMetrics = metrics.get();
+		AbstractStringMetric metric = threadMetrics[method.ordinal()];
+		if (metric == null){
+			metric = createMetric(method);
+			threadMetrics[method.ordinal()] = metric;
+		}
+		return metric;
+	}
+
+
+	private static AbstractStringMetric createMetric(StringSimilarity method){
+		switch (method) {
+		case JARO:
+			return new Jaro();
+		case JARO_WINKLER:
+			return new JaroWinkler();
+		case MONGE_ELKAN:
+			return new MongeElkan();
+		case LEVENSTHEIN:
+			return new Levenshtein();
+		default:
+			return null;
+		}
+	}
+
+}
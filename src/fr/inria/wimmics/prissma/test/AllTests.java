@@ -24,7 +24,9 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ DecomposerTest.class, MatcherTest.class, RendererTest.class })
+@SuiteClasses({ DecomposerTest.class, MatcherTest.class, RendererTest.class, StringMetricsTest.class,
+	SimilarityCacheTest.class, SemanticRelatednessTest.class, GeoIndexTest.class,
+	IntervalIndexTest.class, NodeDictionaryTest.class })
 public class AllTests {
 
 } 
@@ -0,0 +1,93 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+import fr.inria.wimmics.prissma.selection.PrissmaProperties;
+
+/**
+ * Prism and input context models shared by the tests.
+ */
+final class ContextModels {
+
+	static final String NEARBY_ENTITY = "http://anthony-2351.example.org";
+	
+	
+	private ContextModels() {
+	}
+	
+	
+	/**
+	 * Creates a context, w/ an environment if nearbyEntity is not null.
+	 * @param prism the prism of the context, or null for input contexts
+	 */
+	static Model createCtxModel(String prism, String interest, String nearbyEntity){
+		Model model = ModelFactory.createDefaultModel();
+		Resource ctx1 = model.createResource(PrissmaProperties.DEFAULT + "ctx1");
+		Resource usr1 = model.createResource(PrissmaProperties.DEFAULT + "usr1");
+		model.add(ctx1, PrissmaProperties.pType, model.createResource(PrissmaProperties.PRISSMA + "Context"));
+		model.add(usr1, PrissmaProperties.pType, model.createResource(PrissmaProperties.PRISSMA + "User"));
+		model.add(ctx1, PrissmaProperties.pUsr, usr1);
+		model.add(usr1, PrissmaProperties.pKnows, interest);
+		if (nearbyEntity != null){
+			Resource env1 = model.createResource(PrissmaProperties.DEFAULT + "env1");
+			model.add(env1, PrissmaProperties.pType, model.createResource(PrissmaProperties.PRISSMA + "Environment"));
+			model.add(ctx1, PrissmaProperties.pEnv, env1);
+			model.add(env1, ResourceFactory.createProperty(PrissmaProperties.PRISSMA, "nearbyEntity"), 
+					model.createResource(nearbyEntity));
+		}
+		if (prism != null)
+			model.add(model.createResource(PrissmaProperties.DEFAULT + prism), PrissmaProperties.pPurpose, ctx1);
+		return model;
+	}
+	
+	
+	/**
+	 * Adds a point of interest to the environment of a context created w/ a nearby entity.
+	 * @param radius meters
+	 */
+	static void addGeoUnit(Model model, double lat, double lon, double radius){
+		Resource env1 = model.createResource(PrissmaProperties.DEFAULT + "env1");
+		Resource poi = model.createResource();
+		model.add(env1, PrissmaProperties.pPOI, poi);
+		model.add(poi, PrissmaProperties.pLat, model.createTypedLiteral(lat));
+		model.add(poi, PrissmaProperties.pLon, model.createTypedLiteral(lon));
+		model.add(poi, PrissmaProperties.pRad, model.createTypedLiteral(radius));
+	}
+	
+	
+	/**
+	 * Adds a time to the environment of a context created w/ a nearby entity.
+	 * @param start ISO time, e.g. 08:00:00
+	 * @param duration ISO period, e.g. PT2H
+	 */
+	static void addTimeUnit(Model model, String start, String duration){
+		Resource env1 = model.createResource(PrissmaProperties.DEFAULT + "env1");
+		Resource time = model.createResource();
+		model.add(env1, PrissmaProperties.pTime, time);
+		model.add(time, PrissmaProperties.pStart, start);
+		model.add(time, PrissmaProperties.pDuration, duration);
+	}
+	
+}
@@ -20,15 +20,35 @@
 
 package fr.inria.wimmics.prissma.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static fr.inria.wimmics.prissma.test.ContextModels.NEARBY_ENTITY;
+import static fr.inria.wimmics.prissma.test.ContextModels.addGeoUnit;
+import static fr.inria.wimmics.prissma.test.ContextModels.addTimeUnit;
+import static fr.inria.wimmics.prissma.test.ContextModels.createCtxModel;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -43,6 +63,7 @@ import com.hp.hpl.jena.util.FileManager;
 
 import fr.inria.wimmics.prissma.selection.Decomposer;
 import fr.inria.wimmics.prissma.selection.PrissmaProperties;
+import fr.inria.wimmics.prissma.selection.SelectionEngine;
 import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
 import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
 import fr.inria.wimmics.prissma.selection.entities.DecompItem;
@@ -50,10 +71,14 @@ import fr.inria.wimmics.prissma.selection.entities.Decomposition;
 import fr.inria.wimmics.prissma.selection.entities.Edge;
 import fr.inria.wimmics.prissma.selection.entities.Prism;
 import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+import fr.inria.wimmics.prissma.selection.utilities.DecompositionSnapshot;
+import fr.inria.wimmics.prissma.selection.utilities.MappedDecompositionStore;
 
 public class DecomposerTest {
 	
 	private Logger LOG = LoggerFactory.getLogger(DecomposerTest.class);
+	// magic, version, body length and checksum
+	private static final int SNAPSHOT_HEADER_LENGTH = 20;
 
 	
 	
@@ -70,6 +95,347 @@ public class DecomposerTest {
 		
 	}
 	
+	@Test
+	public void testRemoveLastPrism(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition expectedDecomp = decompose(decomposer, createPrismModels(), 3);
+		Decomposition decomp = decompose(decomposer, createPrismModels(), 4);
+		
+		assertTrue(decomp.removePrism(getPrismURI("prism0")));
+		assertEquals(expectedDecomp, decomp);
+		for (int i = 0; i < decomp.elements.size(); i++)
+			assertEquals(expectedDecomp.elements.get(i).prismURISet, decomp.elements.get(i).prismURISet);
+		assertEquals(expectedDecomp.getSize(), decomp.getSize());
+	}
+	
+	
+	@Test
+	public void testRemovePrism(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = decompose(decomposer, createPrismModels(), 4);
+		
+		// prism2 is built on top of prism1: only the items of prism2 are deleted
+		decomposer.removePrism(getPrismURI("prism2"), decomp);
+		List<Model> prisms = createPrismModels();
+		prisms.remove(1);
+		assertEquivalent(decompose(decomposer, prisms, prisms.size()), decomp);
+		
+		// the items of prism1 shared w/ prism3 are kept
+		decomposer.removePrism(getPrismURI("prism1"), decomp);
+		prisms = createPrismModels();
+		prisms.remove(1);
+		prisms.remove(0);
+		assertEquivalent(decompose(decomposer, prisms, prisms.size()), decomp);
+		
+		// add the removed prisms again
+		prisms = createPrismModels();
+		decomp = decomposer.decompose(prisms.get(0), decomp);
+		decomp = decomposer.decompose(prisms.get(1), decomp);
+		assertEquivalent(decompose(decomposer, createPrismModels(), 4), decomp);
+		
+		// nothing to remove
+		assertFalse(decomp.removePrism(getPrismURI("prism4")));
+		assertEquivalent(decompose(decomposer, createPrismModels(), 4), decomp);
+		
+		// remove everything
+		for (String prism : new String[]{"prism0", "prism1", "prism2", "prism3"})
+			decomposer.removePrism(getPrismURI(prism), decomp);
+		assertEquals(0, decomp.elements.size());
+		assertEquals(0, decomp.getPrismCount());
+	}
+	
+	
+	@Test
+	public void testSnapshot() throws IOException{
+		Decomposer decomposer = new Decomposer();
+		List<Model> prisms = createPrismModels();
+		prisms.add(createGeoTimePrismModel("prism5"));
+		Decomposition decomp = decompose(decomposer, prisms, prisms.size());
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DecompositionSnapshot.write(decomp, out);
+		byte[] snapshot = out.toByteArray();
+		Decomposition loaded = DecompositionSnapshot.read(new ByteArrayInputStream(snapshot));
+		assertEquals(decomp, loaded);
+		assertEquals(decomp.idCounter, loaded.idCounter);
+		assertEquals(decomp.substitutions, loaded.substitutions);
+		int geoTimeUnits = 0;
+		for (int i = 0; i < decomp.elements.size(); i++) {
+			DecompItem item = decomp.elements.get(i);
+			DecompItem loadedItem = loaded.elements.get(i);
+			assertEquals(item.prismURISet, loadedItem.prismURISet);
+			if (item.isCtxUnit && (item.ctxUnit.type == CtxUnitType.GEO || item.ctxUnit.type == CtxUnitType.TIME)){
+				geoTimeUnits++;
+				assertEquals(item.ctxUnit.lat, loadedItem.ctxUnit.lat, 0);
+				assertEquals(item.ctxUnit.radius, loadedItem.ctxUnit.radius, 0);
+				assertEquals(item.ctxUnit.start, loadedItem.ctxUnit.start, 0);
+				assertEquals(item.ctxUnit.duration, loadedItem.ctxUnit.duration, 0);
+			}
+			if (item.isPrism())
+				assertTrue(ContextUnitConverter.areIsomorphic(decomp.getReconstructedModel(item), 
+						loaded.getReconstructedModel(loadedItem)));
+		}
+		assertEquals(2, geoTimeUnits);
+		
+		// snapshots of the loaded decomposition are the same
+		out = new ByteArrayOutputStream();
+		DecompositionSnapshot.write(loaded, out);
+		assertArrayEquals(snapshot, out.toByteArray());
+		
+		// prisms can still be added to the loaded decomposition
+		loaded = decomposer.decompose(createCtxModel("prism4", "cinema", NEARBY_ENTITY), loaded);
+		decomp = decomposer.decompose(createCtxModel("prism4", "cinema", NEARBY_ENTITY), decomp);
+		assertEquals(decomp, loaded);
+		
+		// other format version, corrupted snapshot
+		byte[] otherVersion = snapshot.clone();
+		otherVersion[7]++;
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(otherVersion)));
+		byte[] corrupted = snapshot.clone();
+		corrupted[corrupted.length / 2]++;
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(corrupted)));
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length - 1))));
+		
+		// malformed bodies w/ a valid checksum
+		byte[] body = Arrays.copyOfRange(snapshot, SNAPSHOT_HEADER_LENGTH, snapshot.length);
+		byte[] negativeSize = body.clone();
+		Arrays.fill(negativeSize, 0, 4, (byte) 0xff);
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(withBody(snapshot, negativeSize))));
+		byte[] garbage = body.clone();
+		Arrays.fill(garbage, garbage.length / 2, garbage.length, (byte) 0x7f);
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(withBody(snapshot, garbage))));
+		byte[] badIds = body.clone();
+		Arrays.fill(badIds, badIds.length / 2, badIds.length, (byte) 0x01);
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(withBody(snapshot, badIds))));
+		assertNull(DecompositionSnapshot.read(new ByteArrayInputStream(
+				withBody(snapshot, Arrays.copyOf(body, body.length / 2)))));
+	}
+	
+	
+	/**
+	 * Replaces the body of a snapshot, w/ a valid length and checksum.
+	 */
+	private byte[] withBody(byte[] snapshot, byte[] body) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(snapshot, 0, 8);
+		data.writeInt(body.length);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		data.writeLong(crc.getValue());
+		data.write(body);
+		data.flush();
+		return out.toByteArray();
+	}
+	
+	
+	@Test
+	public void testLoadDecomposition() throws IOException{
+		File snapshotFile = File.createTempFile("decomposition", ".bin");
+		assertTrue(snapshotFile.delete());
+		try {
+			Decomposer decomposer = new Decomposer();
+			// no snapshot: prisms are decomposed and the snapshot is written
+			Decomposition decomp = decomposer.loadDecomposition(snapshotFile, PrissmaProperties.PRISM_PATH_TEST);
+			assertTrue(snapshotFile.isFile());
+			assertEquals(decomp, decomposer.loadDecomposition(snapshotFile, PrissmaProperties.PRISM_PATH_TEST));
+			assertEquals(decomp, DecompositionSnapshot.read(snapshotFile));
+		} finally {
+			snapshotFile.delete();
+		}
+	}
+	
+	
+	@Test
+	public void testMappedStore() throws IOException{
+		Decomposer decomposer = new Decomposer();
+		List<Model> prisms = createPrismModels();
+		prisms.add(createGeoTimePrismModel("prism5"));
+		Decomposition decomp = decompose(decomposer, prisms, prisms.size());
+		
+		File storeFile = File.createTempFile("decomposition", ".store");
+		try {
+			MappedDecompositionStore.write(decomp, storeFile);
+			Decomposition mapped = new Decomposition(MappedDecompositionStore.open(storeFile));
+			assertEquals(decomp, mapped);
+			assertEquals(decomp.idCounter, mapped.idCounter);
+			assertEquals(decomp.substitutions, mapped.substitutions);
+			for (int i = 0; i < decomp.elements.size(); i++) {
+				assertEquals(decomp.elements.get(i).prismURISet, mapped.elements.get(i).prismURISet);
+				assertEquals(decomp.getDescendants(i), mapped.getDescendants(i));
+			}
+			assertEquals(decomp.getPrismCount(), mapped.getPrismCount());
+			
+			assertEquals(decomp.getCtxUnitItemIds(), mapped.getCtxUnitItemIds());
+			
+			// items are decoded at each access, reconstructed graphs are cached by id
+			MappedDecompositionStore store = (MappedDecompositionStore) mapped.elements;
+			for (int i = 0; i < mapped.elements.size(); i++) {
+				DecompItem item = mapped.elements.get(i);
+				assertNotSame(item, mapped.elements.get(i));
+				if (item.isPrism())
+					assertSame(mapped.getReconstructedModel(item), mapped.getReconstructedModel(mapped.elements.get(i)));
+			}
+			
+			// same results: GEO and TIME indexes are built from the records, w/o decoding items
+			store = MappedDecompositionStore.open(storeFile);
+			mapped = new Decomposition(store);
+			mapped.getGeoIndex(1);
+			mapped.getTimeIndex(1);
+			assertEquals(0, store.getDecodedItemCount());
+			SelectionEngine engine = new SelectionEngine(decomp);
+			SelectionEngine mappedEngine = new SelectionEngine(mapped);
+			Set<URI> geoTimeResults = mappedEngine.search(createGeoTimeInputModel());
+			assertEquals(engine.search(createGeoTimeInputModel()), geoTimeResults);
+			assertTrue(geoTimeResults.contains(getPrismURI("prism5")));
+			assertEquals(engine.search(createCtxModel(null, "fishing", NEARBY_ENTITY)), 
+					mappedEngine.search(createCtxModel(null, "fishing", NEARBY_ENTITY)));
+			assertEquals(engine.search(createCtxModel(null, "computer programming", null)), 
+					mappedEngine.search(createCtxModel(null, "computer programming", null)));
+			
+			// a search w/o matches decodes the ctx unit items, and only the items reached by its class units
+			long decoded = store.getDecodedItemCount();
+			assertTrue(mappedEngine.search(createCtxModel(null, "zzzzzzzzzz", null)).isEmpty());
+			decoded = store.getDecodedItemCount() - decoded;
+			assertTrue(decoded >= mapped.getCtxUnitItemIds().size());
+			assertTrue(decoded < store.size());
+			
+			// read-only
+			try {
+				mapped.addItem(new DecompItem(mapped.idCounter));
+				fail();
+			} catch (UnsupportedOperationException e) {
+			}
+			try {
+				mapped.removePrism(getPrismURI("prism1"));
+				fail();
+			} catch (UnsupportedOperationException e) {
+			}
+			
+			// corrupted store
+			RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+			try {
+				raf.seek(raf.length() / 2);
+				int b = raf.read();
+				raf.seek(raf.length() / 2);
+				raf.write(b + 1);
+			} finally {
+				raf.close();
+			}
+			assertNull(MappedDecompositionStore.open(storeFile));
+		} finally {
+			storeFile.delete();
+		}
+	}
+	
+	
+	/**
+	 * The cache size of reconstructed graphs is set per decomposition: 
+	 * w/o cache, graphs are rebuilt at each access, and the decomposition is the same.
+	 */
+	@Test
+	public void testReconstructedModelCacheSize(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition cached = decompose(decomposer, createPrismModels(), 4);
+		Decomposition uncached = new Decomposition(0);
+		for (Model prism : createPrismModels())
+			uncached = decomposer.decompose(prism, uncached);
+		assertEquals(cached, uncached);
+		assertEquivalent(cached, uncached);
+		for (DecompItem item : uncached.elements) {
+			if (!item.isPrism())
+				continue;
+			assertNotSame(uncached.getReconstructedModel(item), uncached.getReconstructedModel(item));
+			DecompItem cachedItem = cached.elements.get(item.id);
+			assertSame(cached.getReconstructedModel(cachedItem), cached.getReconstructedModel(cachedItem));
+		}
+	}
+	
+	
+	/**
+	 * Checks that the decomposition has the same prisms as the expected one, 
+	 * and that it only contains the items of its prisms, w/ compact ids.
+	 */
+	private void assertEquivalent(Decomposition expectedDecomp, Decomposition decomp){
+		assertEquals(expectedDecomp.getPrismCount(), decomp.getPrismCount());
+		for (DecompItem expectedItem : expectedDecomp.elements) {
+			for (URI prismURI : expectedItem.prismURISet) {
+				DecompItem item = getPrismItem(decomp, prismURI);
+				assertNotNull(item);
+				assertTrue(ContextUnitConverter.areIsomorphic(expectedDecomp.getReconstructedModel(expectedItem), 
+						decomp.getReconstructedModel(item)));
+				assertEquals(item.id, decomp.getItem(decomp.getReconstructedModel(item)));
+			}
+		}
+		assertEquals(decomp.elements.size(), decomp.idCounter);
+		for (int i = 0; i < decomp.elements.size(); i++) {
+			DecompItem item = decomp.elements.get(i);
+			assertEquals(i, item.id);
+			assertTrue(item.idAncestor1 < i && item.idAncestor2 < i);
+			assertTrue(item.isPrism() || !decomp.getDescendants(i).isEmpty());
+		}
+	}
+	
+	
+	private DecompItem getPrismItem(Decomposition decomp, URI prismURI){
+		for (DecompItem item : decomp.elements) {
+			if (item.prismURISet.contains(prismURI))
+				return item;
+		}
+		return null;
+	}
+	
+	
+	private Decomposition decompose(Decomposer decomposer, List<Model> prisms, int count){
+		Decomposition decomp = new Decomposition();
+		for (int i = 0; i < count; i++)
+			decomp = decomposer.decompose(prisms.get(i), decomp);
+		return decomp;
+	}
+	
+	
+	private URI getPrismURI(String prism){
+		try {
+			return new URI(PrissmaProperties.DEFAULT + prism);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	
+	/**
+	 * prism1, prism2 (prism1 + environment), prism3 (prism1 w/ another interest) 
+	 * and prism0 (prism3 + environment). 
+	 */
+	private List<Model> createPrismModels(){
+		List<Model> prisms = new ArrayList<Model>();
+		prisms.add(createCtxModel("prism1", "computer programming", null));
+		prisms.add(createCtxModel("prism2", "computer programming", NEARBY_ENTITY));
+		prisms.add(createCtxModel("prism3", "fishing", null));
+		prisms.add(createCtxModel("prism0", "fishing", NEARBY_ENTITY));
+		return prisms;
+	}
+	
+	
+	private Model createGeoTimePrismModel(String prism){
+		Model model = createCtxModel(prism, "football", NEARBY_ENTITY);
+		addGeoUnit(model, 45.4, 7.2, 2000.0);
+		addTimeUnit(model, "08:00:00", "PT2H");
+		return model;
+	}
+	
+	
+	/**
+	 * Input context within the location and the time of createGeoTimePrismModel().
+	 */
+	private Model createGeoTimeInputModel(){
+		Model model = createCtxModel(null, "football", NEARBY_ENTITY);
+		addGeoUnit(model, 45.41, 7.2, 100.0);
+		addTimeUnit(model, "09:00:00", "PT1H");
+		return model;
+	}
+	
+	
 	class ModelMemoryTest{
 		List<Model> prismsModels;
 		
@@ -0,0 +1,136 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.inria.wimmics.prissma.selection.utilities.GeoIndex;
+
+public class GeoIndexTest {
+
+	@Test
+	public void testCellBoundaries(){
+		GeoIndex index = new GeoIndex(1.0);
+		// centers on cell corners and edges
+		index.add(0, 10, 20, 0);
+		index.add(1, 10.5, 21, 0);
+		index.add(2, -10, -20, 0);
+		assertTrue(index.query(10, 20).contains(0));
+		assertTrue(index.query(10.5, 21).contains(1));
+		assertTrue(index.query(-10, -20).contains(2));
+		// padding registers zero radius areas in the neighbouring cells too
+		assertTrue(index.query(9.9999999999, 19.9999999999).contains(0));
+		assertTrue(index.query(10.5, 20.9999999999).contains(1));
+		assertFalse(index.query(11.5, 21.5).contains(0));
+		assertEquals(3, index.size());
+	}
+	
+	
+	@Test
+	public void testAntimeridian(){
+		GeoIndex index = new GeoIndex();
+		// 5 Km around a point 1.1 Km west of the antimeridian
+		index.add(0, 0, 179.99, 5);
+		index.add(1, 0, -179.99, 0.5);
+		assertTrue(index.query(0, 179.99).contains(0));
+		assertTrue(index.query(0, 180).contains(0));
+		assertTrue(index.query(0, -180).contains(0));
+		assertTrue(index.query(0, -179.98).contains(0));
+		assertTrue(index.query(0, -179.99).contains(1));
+		assertFalse(index.query(0, 179.99).contains(1));
+		assertFalse(index.query(0, -179.9).contains(0));
+	}
+	
+	
+	@Test
+	public void testRadiusSpanningCells(){
+		GeoIndex index = new GeoIndex();
+		// 3 Km radius, over several 0.01 degree cells
+		index.add(0, 45, 7, 3);
+		double dLat = Math.toDegrees(2.9 / GeoIndex.EARTH_RADIUS);
+		double dLon = dLat / Math.cos(Math.toRadians(45));
+		assertTrue(index.query(45 + dLat, 7).contains(0));
+		assertTrue(index.query(45 - dLat, 7).contains(0));
+		assertTrue(index.query(45, 7 + dLon).contains(0));
+		assertTrue(index.query(45, 7 - dLon).contains(0));
+		assertTrue(index.query(45 + dLat / 2, 7 - dLon / 2).contains(0));
+		assertFalse(index.query(45 + 3 * dLat, 7).contains(0));
+		assertFalse(index.query(45, 7 + 3 * dLon).contains(0));
+	}
+	
+	
+	@Test
+	public void testOversizedAreas(){
+		GeoIndex index = new GeoIndex();
+		index.add(0, 89.99, 0, 10);
+		index.add(1, 45, 7, Double.POSITIVE_INFINITY);
+		index.add(2, 45, 7, 1000);
+		index.add(3, 45, 7, 1);
+		for (int id = 0; id < 3; id++) {
+			assertTrue(index.query(-45, -120).contains(id));
+			assertTrue(index.query(Double.NaN, 7).contains(id));
+		}
+		assertFalse(index.query(-45, -120).contains(3));
+	}
+	
+	
+	/**
+	 * Every area containing a point must be returned by the query.
+	 */
+	@Test
+	public void testNoFalseNegatives(){
+		Random random = new Random(42);
+		GeoIndex index = new GeoIndex(0.05);
+		int areaCount = 200;
+		double[][] areas = new double[areaCount][];
+		for (int i = 0; i < areaCount; i++) {
+			areas[i] = new double[]{44 + 2 * random.nextDouble(), 179 + 2 * random.nextDouble(), 20 * random.nextDouble()};
+			if (areas[i][1] > 180)
+				areas[i][1] -= 360;
+			index.add(i, areas[i][0], areas[i][1], areas[i][2]);
+		}
+		for (int j = 0; j < 2000; j++) {
+			double lat = 44 + 2 * random.nextDouble();
+			double lon = 179 + 2 * random.nextDouble();
+			if (lon > 180)
+				lon -= 360;
+			for (int i = 0; i < areaCount; i++) {
+				if (distance(lat, lon, areas[i][0], areas[i][1]) <= areas[i][2])
+					assertTrue(index.query(lat, lon).contains(i));
+			}
+		}
+	}
+	
+	
+	private static double distance(double lat1, double lon1, double lat2, double lon2){
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) 
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * GeoIndex.EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+	}
+	
+}
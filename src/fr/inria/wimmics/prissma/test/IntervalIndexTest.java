@@ -0,0 +1,150 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static fr.inria.wimmics.prissma.test.ContextModels.NEARBY_ENTITY;
+import static fr.inria.wimmics.prissma.test.ContextModels.addTimeUnit;
+import static fr.inria.wimmics.prissma.test.ContextModels.createCtxModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+import fr.inria.wimmics.prissma.selection.Decomposer;
+import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
+import fr.inria.wimmics.prissma.selection.entities.DecompItem;
+import fr.inria.wimmics.prissma.selection.entities.Decomposition;
+import fr.inria.wimmics.prissma.selection.utilities.IntervalIndex;
+
+public class IntervalIndexTest {
+
+	@Test
+	public void testEmptyIndex(){
+		IntervalIndex index = new IntervalIndex();
+		assertEquals(0, index.size());
+		assertTrue(index.query(0).isEmpty());
+		assertTrue(index.query(Double.NaN).isEmpty());
+		
+		// unbounded intervals only
+		index.add(0, Double.NaN, 10);
+		index.add(1, 0, Double.POSITIVE_INFINITY);
+		assertEquals(2, index.size());
+		assertEquals(2, index.query(-100).size());
+		assertEquals(2, index.query(Double.NaN).size());
+	}
+	
+	
+	@Test
+	public void testTouchingEndpoints(){
+		IntervalIndex index = new IntervalIndex();
+		index.add(0, 0, 10);
+		index.add(1, 10, 20);
+		index.add(2, 20, 20);
+		assertEquals(sorted(0), sorted(index.query(0)));
+		assertEquals(sorted(0, 1), sorted(index.query(10)));
+		assertEquals(sorted(1), sorted(index.query(Math.nextUp(10.0))));
+		assertEquals(sorted(1, 2), sorted(index.query(20)));
+		assertTrue(index.query(Math.nextUp(20.0)).isEmpty());
+		assertTrue(index.query(-Double.MIN_VALUE).isEmpty());
+		
+		// added after a query: the tree is rebuilt
+		index.add(3, 5, 15);
+		assertEquals(sorted(0, 1, 3), sorted(index.query(10)));
+	}
+	
+	
+	/**
+	 * Queries must return the same intervals as a linear scan.
+	 */
+	@Test
+	public void testSameAsLinearScan(){
+		Random random = new Random(42);
+		IntervalIndex index = new IntervalIndex();
+		int count = 500;
+		double[][] intervals = new double[count][];
+		for (int i = 0; i < count; i++) {
+			double low = random.nextInt(1000);
+			intervals[i] = new double[]{low, low + random.nextInt(50)};
+			index.add(i, intervals[i][0], intervals[i][1]);
+		}
+		for (int x = -10; x < 1060; x++) {
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < count; i++) {
+				if (intervals[i][0] <= x && x <= intervals[i][1])
+					expected.add(i);
+			}
+			assertEquals(expected, sorted(index.query(x)));
+		}
+	}
+	
+	
+	/**
+	 * TIME units of the decomposition are indexed w/ their reach: horizon * duration before and after.
+	 */
+	@Test
+	public void testHorizon(){
+		Model prism = createCtxModel("prism1", "fishing", NEARBY_ENTITY);
+		addTimeUnit(prism, "08:00:00", "PT2H");
+		Decomposition decomp = new Decomposer().decompose(prism, new Decomposition());
+		int timeId = -1;
+		for (DecompItem item : decomp.elements) {
+			if (item.isCtxUnit && item.ctxUnit != null && item.ctxUnit.type == CtxUnitType.TIME)
+				timeId = item.id;
+		}
+		assertTrue(timeId >= 0);
+		
+		double hour = 3600;
+		// no horizon: the interval itself, from 8:00 to 10:00
+		IntervalIndex index = decomp.getTimeIndex(0);
+		assertTrue(index.query(8 * hour).contains(timeId));
+		assertTrue(index.query(10 * hour).contains(timeId));
+		assertFalse(index.query(7.9 * hour).contains(timeId));
+		assertFalse(index.query(10.1 * hour).contains(timeId));
+		// half the duration before and after: from 7:00 to 11:00
+		index = decomp.getTimeIndex(.5);
+		assertTrue(index.query(7 * hour).contains(timeId));
+		assertTrue(index.query(11 * hour).contains(timeId));
+		assertFalse(index.query(6.9 * hour).contains(timeId));
+		assertFalse(index.query(11.1 * hour).contains(timeId));
+	}
+	
+	
+	private static List<Integer> sorted(Integer... ids){
+		List<Integer> list = new ArrayList<Integer>();
+		Collections.addAll(list, ids);
+		return sorted(list);
+	}
+	
+	
+	private static List<Integer> sorted(List<Integer> ids){
+		List<Integer> list = new ArrayList<Integer>(ids);
+		Collections.sort(list);
+		return list;
+	}
+	
+}
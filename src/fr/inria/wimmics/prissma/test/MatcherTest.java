@@ -21,16 +21,26 @@ package fr.inria.wimmics.prissma.test;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static fr.inria.wimmics.prissma.test.ContextModels.addGeoUnit;
+import static fr.inria.wimmics.prissma.test.ContextModels.addTimeUnit;
+import static fr.inria.wimmics.prissma.test.ContextModels.createCtxModel;
 
 import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -42,15 +52,22 @@ import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
 import com.hp.hpl.jena.util.FileManager;
 
+import fr.inria.wimmics.prissma.selection.CtxUnitMatchCache;
 import fr.inria.wimmics.prissma.selection.Decomposer;
 import fr.inria.wimmics.prissma.selection.Matcher;
+import fr.inria.wimmics.prissma.selection.PrissmaConfig;
 import fr.inria.wimmics.prissma.selection.PrissmaProperties;
+import fr.inria.wimmics.prissma.selection.SelectionEngine;
 import fr.inria.wimmics.prissma.selection.entities.ContextUnit;
 import fr.inria.wimmics.prissma.selection.entities.CtxUnitType;
 import fr.inria.wimmics.prissma.selection.entities.DecompItem;
 import fr.inria.wimmics.prissma.selection.entities.Decomposition;
+import fr.inria.wimmics.prissma.selection.entities.ETSubgraphIsomorphism;
 import fr.inria.wimmics.prissma.selection.entities.Edge;
+import fr.inria.wimmics.prissma.selection.entities.EditOperation;
+import fr.inria.wimmics.prissma.selection.entities.PrismResult;
 import fr.inria.wimmics.prissma.selection.utilities.ContextUnitConverter;
+import fr.inria.wimmics.prissma.selection.utilities.MappedDecompositionStore;
 
 public class MatcherTest {
 
@@ -115,6 +132,158 @@ public class MatcherTest {
 	}
 	
 	
+	@Test
+	public void testCtxUnitHashing(){
+		Model model = ModelFactory.createDefaultModel();
+		ContextUnit entity1 = new ContextUnit(CtxUnitType.ENTITY);
+		entity1.instance = model.createResource(PrissmaProperties.DEFAULT + "usr1");
+		ContextUnit entity2 = new ContextUnit(CtxUnitType.ENTITY);
+		entity2.instance = ResourceFactory.createResource(PrissmaProperties.DEFAULT + "usr1");
+		ContextUnit string1 = new ContextUnit(CtxUnitType.STRING);
+		string1.instance = ResourceFactory.createPlainLiteral("computer programming");
+		ContextUnit string2 = new ContextUnit(CtxUnitType.STRING);
+		string2.instance = model.createLiteral("computer programming");
+		
+		// equal nodes share the same dictionary id
+		assertEquals(entity1, entity2);
+		assertEquals(entity1.getInstanceId(), entity2.getInstanceId());
+		assertEquals(string1, string2);
+		assertEquals(string1.getInstanceId(), string2.getInstanceId());
+		assertFalse(entity1.getInstanceId() == string1.getInstanceId());
+		assertFalse(string1.equals(entity1));
+		
+		// hashes are the string based ones
+		assertEquals(("ENTITY" + entity1.instance).hashCode(), entity1.hashCode());
+		assertEquals(entity1.hashCode(), entity2.hashCode());
+		Edge edge = new Edge();
+		edge.v1 = entity1;
+		edge.v2 = string1;
+		edge.label = PrissmaProperties.pKnows;
+		assertEquals((entity1.toString() + string1.toString() + edge.label.toString()).hashCode(), edge.hashCode());
+		
+		// replaced instances are interned again
+		string2.instance = ResourceFactory.createPlainLiteral("fishing");
+		assertFalse(string1.equals(string2));
+		assertEquals(("STRING" + string2.instance).hashCode(), string2.hashCode());
+		edge.v2 = string2;
+		assertEquals((entity1.toString() + string2.toString() + edge.label.toString()).hashCode(), edge.hashCode());
+	}
+	
+	
+	/**
+	 * GEO and TIME units are equal if they have the same root and the same parsed payload, and are hashed by root.
+	 */
+	@Test
+	public void testGeoTimeUnitEquality(){
+		Model model = ModelFactory.createDefaultModel();
+		Resource env1 = model.createResource(PrissmaProperties.DEFAULT + "env1");
+		Resource poi1 = model.createResource(PrissmaProperties.DEFAULT + "poi1");
+		model.add(env1, PrissmaProperties.pPOI, poi1);
+		model.add(poi1, PrissmaProperties.pLat, model.createTypedLiteral(45.4));
+		model.add(poi1, PrissmaProperties.pLon, model.createTypedLiteral(7.2));
+		ContextUnit geo1 = new ContextUnit(CtxUnitType.GEO);
+		geo1.instance = poi1;
+		
+		// the same root in another graph, w/ the same payload
+		Model otherModel = ModelFactory.createDefaultModel();
+		Resource otherPoi1 = otherModel.createResource(PrissmaProperties.DEFAULT + "poi1");
+		otherModel.add(otherPoi1, PrissmaProperties.pLat, otherModel.createTypedLiteral(45.4));
+		otherModel.add(otherPoi1, PrissmaProperties.pLon, otherModel.createTypedLiteral(7.2));
+		ContextUnit geo2 = new ContextUnit(CtxUnitType.GEO);
+		geo2.instance = otherPoi1;
+		assertEquals(geo1, geo2);
+		assertEquals(geo2, geo1);
+		assertEquals(geo1.hashCode(), geo2.hashCode());
+		assertEquals(geo1.getInstanceId(), geo2.getInstanceId());
+		
+		Edge edge1 = new Edge();
+		edge1.v1 = new ContextUnit(CtxUnitType.ENTITY);
+		edge1.v1.instance = env1;
+		edge1.v2 = geo1;
+		edge1.label = PrissmaProperties.pPOI;
+		Edge edge2 = new Edge();
+		edge2.v1 = edge1.v1;
+		edge2.v2 = geo2;
+		edge2.label = PrissmaProperties.pPOI;
+		assertEquals(edge1, edge2);
+		assertEquals(edge1.hashCode(), edge2.hashCode());
+		
+		// the same root w/ another payload: the models are not read again once parsed
+		ContextUnit geo3 = new ContextUnit(CtxUnitType.GEO);
+		geo3.instance = otherPoi1;
+		geo3.setGeoPayload(45.4, 7.2, 100);
+		assertFalse(geo1.equals(geo3));
+		geo3.setGeoPayload(45.4, 7.2, Double.NaN);
+		assertEquals(geo1, geo3);
+		
+		// the same payload w/ another root: decomposition items are graphs, whose roots differ
+		ContextUnit geo4 = new ContextUnit(CtxUnitType.GEO);
+		geo4.instance = model.createResource(PrissmaProperties.DEFAULT + "poi2");
+		geo4.setGeoPayload(45.4, 7.2, Double.NaN);
+		assertFalse(geo1.equals(geo4));
+		
+		// TIME units, and units of different types
+		Resource t1 = model.createResource(PrissmaProperties.DEFAULT + "time1");
+		model.add(t1, PrissmaProperties.pStart, "08:00:00");
+		ContextUnit time1 = new ContextUnit(CtxUnitType.TIME);
+		time1.instance = t1;
+		ContextUnit time2 = new ContextUnit(CtxUnitType.TIME);
+		time2.instance = t1;
+		assertEquals(time1, time2);
+		assertEquals(time1.hashCode(), time2.hashCode());
+		ContextUnit time3 = new ContextUnit(CtxUnitType.TIME);
+		time3.instance = t1;
+		time3.setTimePayload(time1.start, 3600);
+		assertFalse(time1.equals(time3));
+		ContextUnit geoTime = new ContextUnit(CtxUnitType.GEO);
+		geoTime.instance = t1;
+		assertFalse(time1.equals(geoTime));
+	}
+	
+	
+	@Test
+	public void testEditPath(){
+		ETSubgraphIsomorphism f1 = new ETSubgraphIsomorphism();
+		EditOperation op1 = new EditOperation();
+		f1.addOperation(op1);
+		ETSubgraphIsomorphism f2 = new ETSubgraphIsomorphism();
+		EditOperation op2 = new EditOperation();
+		f2.addOperation(op2);
+		ETSubgraphIsomorphism f3 = new ETSubgraphIsomorphism();
+		EditOperation op3 = new EditOperation();
+		f3.addOperation(op3);
+		
+		// f1 is shared by both combinations
+		ETSubgraphIsomorphism f12 = new ETSubgraphIsomorphism(f1, f2);
+		EditOperation op12 = new EditOperation();
+		f12.addOperation(op12);
+		ETSubgraphIsomorphism f123 = new ETSubgraphIsomorphism(f12, f3);
+		EditOperation op123a = new EditOperation();
+		EditOperation op123b = new EditOperation();
+		f123.addOperation(op123a);
+		f123.addOperation(op123b);
+		ETSubgraphIsomorphism f31 = new ETSubgraphIsomorphism(f3, f1);
+		
+		List<EditOperation> expected = new ArrayList<EditOperation>();
+		expected.add(op1);
+		expected.add(op2);
+		expected.add(op12);
+		expected.add(op3);
+		expected.add(op123a);
+		expected.add(op123b);
+		assertEquals(expected, f123.getEditPath());
+		assertEquals(expected.size(), f123.getEditPathLength());
+		assertEquals(3, f12.getEditPath().size());
+		expected.clear();
+		expected.add(op3);
+		expected.add(op1);
+		assertEquals(expected, f31.getEditPath());
+		assertEquals(2, f31.getEditPathLength());
+		// ancestors are left untouched
+		assertEquals(1, f1.getEditPath().size());
+	}
+	
+	
 	@Test
 	public void testConversionGEO(){
 		
@@ -519,6 +688,388 @@ public class MatcherTest {
 	
 	
 	
+	/**
+	 * Concurrent searches of a shared engine must return the same results as sequential searches.
+	 */
+	@Test
+	public void testSelectionEngineConcurrency() throws Exception {
+		final String[] interests = {"computer programming", "fishing", "football", "cinema"};
+		final String[] entities = {null, "http://anthony-2351.example.org", "http://bob-1410.example.org"};
+		
+		// contexts w/ an environment also have GEO and TIME units
+		Decomposition decomp = createDecomposition(interests, entities, true);
+		
+		// sequential searches, one matcher per search
+		final int inputCount = interests.length * entities.length + 1;
+		final List<Set<URI>> expectedResults = new ArrayList<Set<URI>>();
+		int matchingInputs = 0;
+		for (int i = 0; i < inputCount; i++) {
+			Matcher matcher = new Matcher(decomp);
+			RDFNode ctxRoot = ContextUnitConverter.getRootCtxNode(createInputCtxModel(i, interests, entities, true));
+			ctxRoot = ContextUnitConverter.switchToClasses(ctxRoot, decomp);
+			matcher.search(ctxRoot);
+			expectedResults.add(matcher.results);
+			if (!matcher.results.isEmpty())
+				matchingInputs++;
+		}
+		assertTrue(matchingInputs > 0);
+		
+		// concurrent searches on the same engine, and on an engine w/ a mapped store
+		File storeFile = File.createTempFile("decomposition", ".store");
+		try {
+			MappedDecompositionStore.write(decomp, storeFile);
+			SelectionEngine[] engines = {new SelectionEngine(decomp), 
+					new SelectionEngine(new Decomposition(MappedDecompositionStore.open(storeFile)))};
+			for (final SelectionEngine engine : engines) {
+				ExecutorService pool = Executors.newFixedThreadPool(8);
+				try {
+					List<Future<Boolean>> searches = new ArrayList<Future<Boolean>>();
+					for (int i = 0; i < 400; i++) {
+						final int input = i % inputCount;
+						searches.add(pool.submit(new Callable<Boolean>() {
+							@Override
+							public Boolean call() {
+								Set<URI> results = engine.search(createInputCtxModel(input, interests, entities, true));
+								return expectedResults.get(input).equals(results);
+							}
+						}));
+					}
+					for (Future<Boolean> search : searches)
+						assertTrue(search.get());
+				} finally {
+					pool.shutdown();
+				}
+			}
+		} finally {
+			storeFile.delete();
+		}
+	}
+	
+	
+	/**
+	 * Per-search configurations must not affect the engine configuration, nor each other.
+	 */
+	@Test
+	public void testConfigOverrides(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = decomposer.decompose(createCtxModel("prism1", "fishing", null), new Decomposition());
+		URI prismURI = URI.create(PrissmaProperties.DEFAULT + "prism1");
+		
+		PrissmaConfig config = PrissmaConfig.fromProperties().withThreshold(.6);
+		PrissmaConfig strictConfig = config.withThreshold(0);
+		assertEquals(.6, config.threshold, 0);
+		assertEquals(0, strictConfig.threshold, 0);
+		assertEquals(config.stringSimilarity, strictConfig.stringSimilarity);
+		
+		// similar string: found w/ the engine threshold only
+		SelectionEngine engine = new SelectionEngine(decomp, config);
+		assertTrue(engine.search(createCtxModel(null, "fisching", null)).contains(prismURI));
+		assertTrue(engine.search(createCtxModel(null, "fisching", null), strictConfig).isEmpty());
+		assertTrue(engine.search(createCtxModel(null, "fisching", null)).contains(prismURI));
+		assertEquals(config, engine.getConfig());
+		// same string: found w/ both
+		assertTrue(engine.search(createCtxModel(null, "fishing", null), strictConfig).contains(prismURI));
+	}
+	
+	
+	/**
+	 * The k best prisms of a top-k search must be the first k of a complete search.
+	 */
+	@Test
+	public void testTopKSearch(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = new Decomposition();
+		decomp = decomposer.decompose(createCtxModel("prism1", "fishing", null), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism2", "fisching", "http://anthony-2351.example.org"), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism3", "fishing", "http://anthony-2351.example.org"), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism4", "football", null), decomp);
+		SelectionEngine engine = new SelectionEngine(decomp, PrissmaConfig.fromProperties().withThreshold(.6));
+		
+		List<PrismResult> all = engine.search(createCtxModel(null, "fishing", "http://anthony-2351.example.org"), 0);
+		assertEquals(3, all.size());
+		for (int i = 1; i < all.size(); i++)
+			assertTrue(all.get(i - 1).cost <= all.get(i).cost);
+		assertEquals(0, all.get(0).cost, 0);
+		
+		for (int k = 1; k <= all.size() + 1; k++) {
+			Matcher session = engine.newSession();
+			RDFNode ctxRoot = ContextUnitConverter.getRootCtxNode(createCtxModel(null, "fishing", "http://anthony-2351.example.org"));
+			ctxRoot = ContextUnitConverter.switchToClasses(ctxRoot, session.substitutions);
+			List<PrismResult> best = session.search(ctxRoot, k);
+			assertEquals(Math.min(k, all.size()), best.size());
+			for (int i = 0; i < best.size(); i++)
+				assertEquals(all.get(i).cost, best.get(i).cost, 0);
+			assertEquals(best.size(), session.results.size());
+		}
+	}
+	
+	
+	/**
+	 * A top-k search stops as soon as k prisms match exactly, 
+	 * w/o selecting the costlier candidates of a complete search.
+	 */
+	@Test
+	public void testTopKEarlyStop(){
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = new Decomposition();
+		decomp = decomposer.decompose(createCtxModel("prism1", "fishing", null), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism2", "fisching", "http://anthony-2351.example.org"), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism3", "fishing", "http://anthony-2351.example.org"), decomp);
+		decomp = decomposer.decompose(createCtxModel("prism4", "football", null), decomp);
+		SelectionEngine engine = new SelectionEngine(decomp, PrissmaConfig.fromProperties().withThreshold(.6));
+		
+		Matcher complete = engine.newSession();
+		RDFNode ctxRoot = ContextUnitConverter.getRootCtxNode(createCtxModel(null, "fishing", "http://anthony-2351.example.org"));
+		List<PrismResult> all = complete.search(ContextUnitConverter.switchToClasses(ctxRoot, complete.substitutions), 0);
+		
+		Matcher topK = engine.newSession();
+		ctxRoot = ContextUnitConverter.getRootCtxNode(createCtxModel(null, "fishing", "http://anthony-2351.example.org"));
+		List<PrismResult> best = topK.search(ContextUnitConverter.switchToClasses(ctxRoot, topK.substitutions), 1);
+		assertEquals(1, best.size());
+		assertEquals(0, best.get(0).cost, 0);
+		assertEquals(all.get(0).cost, best.get(0).cost, 0);
+		assertTrue(topK.selectedCandidates > 0);
+		assertTrue(topK.selectedCandidates < complete.selectedCandidates);
+	}
+	
+	
+	/**
+	 * Batch searches must return the same results as single searches, in the same order.
+	 */
+	@Test
+	public void testBatchSearch(){
+		String[] interests = {"computer programming", "fishing", "football"};
+		String[] entities = {null, "http://anthony-2351.example.org"};
+		SelectionEngine engine = new SelectionEngine(createDecomposition(interests, entities), 
+				PrissmaConfig.fromProperties().withThreshold(.6));
+		
+		// each context twice, so that context units are shared
+		int inputCount = interests.length * entities.length + 1;
+		List<Set<URI>> expectedResults = new ArrayList<Set<URI>>();
+		List<Model> batch = new ArrayList<Model>();
+		List<Model> sequentialBatch = new ArrayList<Model>();
+		for (int i = 0; i < 2 * inputCount; i++) {
+			expectedResults.add(engine.search(createInputCtxModel(i % inputCount, interests, entities)));
+			batch.add(createInputCtxModel(i % inputCount, interests, entities));
+			sequentialBatch.add(createInputCtxModel(i % inputCount, interests, entities));
+		}
+		
+		assertEquals(expectedResults, engine.searchBatch(batch, engine.getConfig(), 4));
+		assertEquals(expectedResults, engine.searchBatch(sequentialBatch, engine.getConfig(), 1));
+		
+		// sessions sharing costs: the second occurrence of each context only hits the cache,
+		// and edit paths refer to the units of the session input context
+		CtxUnitMatchCache matchCache = new CtxUnitMatchCache();
+		for (int i = 0; i < 2 * inputCount; i++) {
+			Matcher session = engine.newSession(engine.getConfig(), matchCache);
+			int cachedCosts = matchCache.size();
+			long hits = matchCache.getHits();
+			session.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(
+					createInputCtxModel(i % inputCount, interests, entities)), session.substitutions));
+			assertEquals(expectedResults.get(i), session.results);
+			if (i >= inputCount){
+				assertEquals(cachedCosts, matchCache.size());
+				assertTrue(matchCache.getHits() > hits);
+			}
+			
+			Set<ContextUnit> inputUnits = Collections.newSetFromMap(new IdentityHashMap<ContextUnit, Boolean>());
+			inputUnits.addAll(session.inputGraphContextUnits);
+			for (List<ETSubgraphIsomorphism> itemWinners : session.winners.values()) {
+				for (ETSubgraphIsomorphism winner : itemWinners) {
+					for (EditOperation op : winner.getEditPath()) {
+						if (op.gInput != null)
+							assertTrue(inputUnits.contains(op.gInput));
+					}
+				}
+			}
+		}
+		assertTrue(matchCache.size() > 0);
+	}
+	
+	
+	/**
+	 * Parallel context unit matching must select the same winners, w/ the same costs, as sequential matching.
+	 * Whatever the parallelism, matching threads come from one shared pool, sized to the available processors.
+	 */
+	@Test
+	public void testParallelCtxUnitMatching(){
+		String[] interests = {"computer programming", "fishing", "fisching", "football"};
+		String[] entities = {null, "http://anthony-2351.example.org", "http://bob-1410.example.org"};
+		PrissmaConfig config = PrissmaConfig.fromProperties().withThreshold(.6).withCtxUnitMatchingParallelism(1);
+		SelectionEngine engine = new SelectionEngine(createDecomposition(interests, entities), config);
+		int[] parallelisms = {2, 4, 16, 64};
+		
+		int inputCount = interests.length * entities.length + 1;
+		for (int i = 0; i < inputCount; i++) {
+			Matcher sequential = engine.newSession();
+			Matcher parallel = engine.newSession(config.withCtxUnitMatchingParallelism(parallelisms[i % parallelisms.length]));
+			sequential.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(
+					createInputCtxModel(i, interests, entities)), sequential.substitutions));
+			parallel.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(
+					createInputCtxModel(i, interests, entities)), parallel.substitutions));
+			
+			assertEquals(sequential.results, parallel.results);
+			assertEquals(sequential.resultCosts, parallel.resultCosts);
+			assertEquals(sequential.winners.keySet(), parallel.winners.keySet());
+			for (Integer itemId : sequential.winners.keySet()) {
+				List<ETSubgraphIsomorphism> sequentialWinners = sequential.winners.get(itemId);
+				List<ETSubgraphIsomorphism> parallelWinners = parallel.winners.get(itemId);
+				assertEquals(sequentialWinners.size(), parallelWinners.size());
+				for (int j = 0; j < sequentialWinners.size(); j++)
+					assertEquals(sequentialWinners.get(j).cost, parallelWinners.get(j).cost, 0);
+			}
+		}
+		
+		int matchingThreads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("prissma-ctxunit-matcher-"))
+				matchingThreads++;
+		}
+		assertTrue(matchingThreads <= Runtime.getRuntime().availableProcessors());
+	}
+	
+	
+	/**
+	 * Pruning GEO candidates w/ the geo index must not change the results, nor their costs.
+	 */
+	@Test
+	public void testGeoPruning(){
+		double[][] prismAreas = {
+			{45.4, 7.2, 2000}, {45.41, 7.21, 500}, {45.5, 7.3, 1000}, 
+			{48.85, 2.35, 3000}, {-33.9, 151.2, 1000}, {0, 179.99, 5000}
+		};
+		double[][] inputPoints = {
+			{45.4, 7.2}, {45.41, 7.21}, {45.405, 7.205}, {45.5, 7.3}, {48.86, 2.36}, 
+			{-33.9, 151.2}, {0, -179.99}, {0, 179.95}, {10, 10}
+		};
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = new Decomposition();
+		for (int i = 0; i < prismAreas.length; i++) {
+			Model prism = createCtxModel("prism" + i, "fishing", "http://anthony-2351.example.org");
+			addGeoUnit(prism, prismAreas[i][0], prismAreas[i][1], prismAreas[i][2]);
+			decomp = decomposer.decompose(prism, decomp);
+		}
+		PrissmaConfig config = PrissmaConfig.fromProperties().withThreshold(.6);
+		SelectionEngine engine = new SelectionEngine(decomp, config);
+		
+		int found = 0;
+		for (double[] point : inputPoints) {
+			Matcher pruned = engine.newSession(config.withPruneCandidates(true));
+			Matcher unpruned = engine.newSession(config.withPruneCandidates(false));
+			Model ctx = createCtxModel(null, "fishing", "http://anthony-2351.example.org");
+			addGeoUnit(ctx, point[0], point[1], 0);
+			pruned.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(ctx), pruned.substitutions));
+			ctx = createCtxModel(null, "fishing", "http://anthony-2351.example.org");
+			addGeoUnit(ctx, point[0], point[1], 0);
+			unpruned.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(ctx), unpruned.substitutions));
+			
+			assertEquals(unpruned.results, pruned.results);
+			assertEquals(unpruned.resultCosts, pruned.resultCosts);
+			if (!pruned.results.isEmpty())
+				found++;
+		}
+		// some points are within reach of a prism, some are not
+		assertTrue(found > 0 && found < inputPoints.length);
+	}
+	
+	
+	/**
+	 * Pruning TIME candidates w/ the interval index must not change the results, nor their costs.
+	 */
+	@Test
+	public void testTimePruning(){
+		String[][] prismTimes = {
+			{"08:00:00", "PT2H"}, {"09:30:00", "PT30M"}, {"12:00:00", "PT1H"}, {"18:00:00", "PT4H"}, {"23:00:00", "PT0S"}
+		};
+		String[] inputTimes = {"08:00:00", "10:00:00", "09:45:00", "11:00:00", "12:30:00", "15:00:00", "23:00:00", "03:00:00"};
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = new Decomposition();
+		for (int i = 0; i < prismTimes.length; i++) {
+			Model prism = createCtxModel("prism" + i, "fishing", "http://anthony-2351.example.org");
+			addTimeUnit(prism, prismTimes[i][0], prismTimes[i][1]);
+			decomp = decomposer.decompose(prism, decomp);
+		}
+		PrissmaConfig config = PrissmaConfig.fromProperties().withThreshold(.6);
+		SelectionEngine engine = new SelectionEngine(decomp, config);
+		
+		int found = 0;
+		for (String time : inputTimes) {
+			Matcher pruned = engine.newSession(config.withPruneCandidates(true));
+			Matcher unpruned = engine.newSession(config.withPruneCandidates(false));
+			Model ctx = createCtxModel(null, "fishing", "http://anthony-2351.example.org");
+			addTimeUnit(ctx, time, "PT0S");
+			pruned.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(ctx), pruned.substitutions));
+			ctx = createCtxModel(null, "fishing", "http://anthony-2351.example.org");
+			addTimeUnit(ctx, time, "PT0S");
+			unpruned.search(ContextUnitConverter.switchToClasses(ContextUnitConverter.getRootCtxNode(ctx), unpruned.substitutions));
+			
+			assertEquals(unpruned.results, pruned.results);
+			assertEquals(unpruned.resultCosts, pruned.resultCosts);
+			if (!pruned.results.isEmpty())
+				found++;
+		}
+		// some times are within reach of a prism, some are not
+		assertTrue(found > 0 && found < inputTimes.length);
+	}
+	
+	
+	/**
+	 * Decomposes a prism for each combination of interest and nearby entity.
+	 */
+	private Decomposition createDecomposition(String[] interests, String[] entities){
+		return createDecomposition(interests, entities, false);
+	}
+	
+	
+	/**
+	 * @param geoTime if true, contexts w/ a nearby entity also have GEO and TIME units, which differ for each prism
+	 */
+	private Decomposition createDecomposition(String[] interests, String[] entities, boolean geoTime){
+		Decomposer decomposer = new Decomposer();
+		Decomposition decomp = new Decomposition();
+		int prismCount = 0;
+		for (String interest : interests) {
+			for (String entity : entities) {
+				Model prism = createCtxModel("prism" + prismCount, interest, entity);
+				if (geoTime && entity != null){
+					addGeoUnit(prism, 45.0 + prismCount * .1, 7.0, 5000);
+					addTimeUnit(prism, String.format("%02d:00:00", 8 + prismCount), "PT" + (1 + prismCount % 3) + "H");
+				}
+				prismCount++;
+				decomp = decomposer.decompose(prism, decomp);
+			}
+		}
+		return decomp;
+	}
+	
+	
+	/**
+	 * Creates the i-th input context: each combination of interest and nearby entity, 
+	 * then a context with an unknown interest.
+	 */
+	private Model createInputCtxModel(int i, String[] interests, String[] entities){
+		return createInputCtxModel(i, interests, entities, false);
+	}
+	
+	
+	/**
+	 * @param geoTime if true, contexts w/ a nearby entity also have a location and a time, 
+	 * near those of the i-th prism of createDecomposition(interests, entities, true) if i is even, far otherwise
+	 */
+	private Model createInputCtxModel(int i, String[] interests, String[] entities, boolean geoTime){
+		if (i >= interests.length * entities.length)
+			return createCtxModel(null, "knitting", null);
+		String entity = entities[i % entities.length];
+		Model ctx = createCtxModel(null, interests[i / entities.length], entity);
+		if (geoTime && entity != null){
+			boolean near = i % 2 == 0;
+			addGeoUnit(ctx, 45.0 + i * .1 + (near ? .01 : 3), 7.0, 0);
+			addTimeUnit(ctx, String.format("%02d:30:00", (8 + i + (near ? 0 : 6)) % 24), "PT0S");
+		}
+		return ctx;
+	}
+	
+	
 	private Model createSimpleModel(){
 		Model model = ModelFactory.createDefaultModel();
 		Resource ctx1 = model.createResource(PrissmaProperties.DEFAULT + "ctx1");
@@ -0,0 +1,98 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+
+import fr.inria.wimmics.prissma.selection.PrissmaProperties;
+import fr.inria.wimmics.prissma.selection.utilities.NodeDictionary;
+
+public class NodeDictionaryTest {
+
+	private static final int GC_ATTEMPTS = 50;
+	
+	
+	@Test
+	public void testEqualNodesShareIds(){
+		Node a = NodeFactory.createURI(PrissmaProperties.DEFAULT + "usr1");
+		Node b = NodeFactory.createURI(PrissmaProperties.DEFAULT + "usr1");
+		assertNotSame(a, b);
+		NodeDictionary.Entry entryA = NodeDictionary.intern(a);
+		NodeDictionary.Entry entryB = NodeDictionary.intern(b);
+		assertSame(entryA, entryB);
+		NodeDictionary.Entry other = NodeDictionary.intern(NodeFactory.createLiteral("usr1"));
+		assertFalse(entryA.id == other.id);
+	}
+	
+	
+	/**
+	 * A stale mapping (its entry collected, its key still alive) must be replaced by a new intern() of an equal node:
+	 * otherwise the mapping may vanish w/ the old key while the new entry is still in use, 
+	 * and equal nodes get different ids.
+	 */
+	@Test
+	public void testStaleMappingIsReplaced(){
+		String uri = PrissmaProperties.DEFAULT + "staleMapping";
+		Node a = NodeFactory.createURI(uri);
+		WeakReference<NodeDictionary.Entry> staleEntry = new WeakReference<NodeDictionary.Entry>(NodeDictionary.intern(a));
+		assertTrue("entry not collected", collect(staleEntry));
+		
+		// a is still alive: the mapping is stale
+		Node b = NodeFactory.createURI(uri);
+		NodeDictionary.Entry entryB = NodeDictionary.intern(b);
+		
+		// the mapping must not vanish w/ the old key, if the dictionary let it go
+		WeakReference<Node> oldKey = new WeakReference<Node>(a);
+		a = null;
+		collect(oldKey);
+		NodeDictionary.size();
+		
+		NodeDictionary.Entry entryC = NodeDictionary.intern(NodeFactory.createURI(uri));
+		assertSame(entryB, entryC);
+		assertEquals(entryB.id, entryC.id);
+	}
+	
+	
+	private static boolean collect(WeakReference<?> ref){
+		for (int i = 0; i < GC_ATTEMPTS && ref.get() != null; i++) {
+			System.gc();
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return ref.get() == null;
+	}
+	
+}
@@ -0,0 +1,102 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.cmu.lti.jawjaw.pobj.POS;
+import edu.cmu.lti.lexical_db.ILexicalDatabase;
+import edu.cmu.lti.lexical_db.NictWordNet;
+import edu.cmu.lti.lexical_db.data.Concept;
+import edu.cmu.lti.ws4j.RelatednessCalculator;
+import edu.cmu.lti.ws4j.impl.Lin;
+import edu.cmu.lti.ws4j.impl.Path;
+import edu.cmu.lti.ws4j.impl.WuPalmer;
+import fr.inria.wimmics.prissma.selection.utilities.SemanticRelatedness;
+
+/**
+ * Checks that bounded evaluation of semantic string similarity 
+ * gives the same scores as the full evaluation, over real WordNet lookups.
+ */
+public class SemanticRelatednessTest {
+
+	private static final String[][] PAIRS = {
+		{"football", "soccer"},
+		{"cinema", "movie"},
+		{"cinema", "cinema"},
+		{"rock", "jazz"},
+		{"office", "home"},
+		{"car", "automobile"},
+		{"walk", "run"},
+		{"computer", "programming"}
+	};
+	
+	private static ILexicalDatabase db;
+	
+	
+	@BeforeClass
+	public static void setUp(){
+		db = new NictWordNet();
+	}
+	
+	
+	@Test
+	public void testLinBoundedScores(){
+		assertSameScores(new Lin(db));
+	}
+	
+	
+	@Test
+	public void testWuPalmerBoundedScores(){
+		assertSameScores(new WuPalmer(db));
+	}
+	
+	
+	@Test
+	public void testPathBoundedScores(){
+		assertSameScores(new Path(db));
+	}
+	
+	
+	private static void assertSameScores(RelatednessCalculator rc){
+		for (String[] pair : PAIRS) {
+			List<List<Concept>> synsets1 = resolve(rc, pair[0], 0);
+			List<List<Concept>> synsets2 = resolve(rc, pair[1], 1);
+			double full = SemanticRelatedness.maxRelatedness(rc, synsets1, synsets2, false);
+			double bounded = SemanticRelatedness.maxRelatedness(rc, synsets1, synsets2, true);
+			assertEquals(rc.getClass().getSimpleName() + " " + pair[0] + "/" + pair[1], full, bounded, 0);
+		}
+	}
+	
+	
+	private static List<List<Concept>> resolve(RelatednessCalculator rc, String word, int side){
+		List<List<Concept>> synsets = new ArrayList<List<Concept>>();
+		for (POS[] posPair : rc.getPOSPairs())
+			synsets.add(new ArrayList<Concept>(db.getAllConcepts(word, posPair[side].toString())));
+		return synsets;
+	}
+	
+}
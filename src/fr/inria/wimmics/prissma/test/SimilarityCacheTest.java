@@ -0,0 +1,111 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+import fr.inria.wimmics.prissma.selection.utilities.SimilarityCache;
+
+public class SimilarityCacheTest {
+
+	private static final int ENTRIES = 1000;
+	
+	
+	@Test
+	public void testHitsAndMisses(){
+		SimilarityCache cache = new SimilarityCache(100);
+		assertNull(cache.get(StringSimilarity.JARO, "office", "home office"));
+		cache.put(StringSimilarity.JARO, "office", "home office", 0.7);
+		assertEquals(0.7, cache.get(StringSimilarity.JARO, "office", "home office"), 0);
+		// keys are not symmetric and depend on the measure
+		assertNull(cache.get(StringSimilarity.JARO, "home office", "office"));
+		assertNull(cache.get(StringSimilarity.MONGE_ELKAN, "office", "home office"));
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+		assertEquals(1, cache.size());
+		
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertNull(cache.get(StringSimilarity.JARO, "office", "home office"));
+	}
+	
+	
+	@Test
+	public void testSegmentSizing(){
+		// 16 segments: 4 of 2 entries, 12 of 1 entry
+		SimilarityCache cache = new SimilarityCache(20);
+		assertEquals(20, cache.getCapacity());
+		fill(cache);
+		assertEquals(20, cache.size());
+		assertEquals(ENTRIES - 20, cache.getEvictions());
+		
+		cache = new SimilarityCache(100);
+		fill(cache);
+		assertEquals(100, cache.size());
+		
+		// fewer entries than segments: one entry per segment
+		cache = new SimilarityCache(3);
+		fill(cache);
+		assertEquals(3, cache.size());
+		assertEquals(ENTRIES - 3, cache.getEvictions());
+		
+		cache = new SimilarityCache(1);
+		fill(cache);
+		assertEquals(1, cache.size());
+		assertNotNull(cache.get(StringSimilarity.JARO, "in" + (ENTRIES - 1), "decomp"));
+	}
+	
+	
+	@Test
+	public void testLruEviction(){
+		SimilarityCache cache = new SimilarityCache(32);
+		cache.put(StringSimilarity.JARO, "hot", "decomp", 0.5);
+		cache.put(StringSimilarity.JARO, "cold", "decomp", 0.5);
+		for (int i = 0; i < ENTRIES; i++) {
+			cache.put(StringSimilarity.JARO, "in" + i, "decomp", 0.1);
+			// read access keeps the entry the most recently used in its segment
+			assertNotNull(cache.get(StringSimilarity.JARO, "hot", "decomp"));
+		}
+		assertNull(cache.get(StringSimilarity.JARO, "cold", "decomp"));
+		assertTrue(cache.size() <= 32);
+	}
+	
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCapacity(){
+		new SimilarityCache(0);
+	}
+	
+	
+	private static void fill(SimilarityCache cache){
+		for (int i = 0; i < ENTRIES; i++)
+			cache.put(StringSimilarity.JARO, "in" + i, "decomp", 0.1);
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import uk.ac.shef.wit.simmetrics.similaritymetrics.AbstractStringMetric;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Jaro;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.JaroWinkler;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Levenshtein;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.MongeElkan;
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+import fr.inria.wimmics.prissma.selection.utilities.StringMetrics;
+
+public class StringMetricsTest {
+
+	private static final String[][] PAIRS = {
+		{"office", "home office"},
+		{"Eiffel Tower", "Tour Eiffel"},
+		{"meeting room", "conference room"},
+		{"jazz", "rock"}
+	};
+
+	private static final StringSimilarity[] METHODS = {
+		StringSimilarity.JARO, StringSimilarity.JARO_WINKLER,
+		StringSimilarity.MONGE_ELKAN, StringSimilarity.LEVENSTHEIN
+	};
+	
+	
+	@Test
+	public void testMetricReusedPerThread(){
+		for (StringSimilarity method : METHODS) {
+			AbstractStringMetric metric = StringMetrics.getMetric(method);
+			assertNotNull(metric);
+			// same instance at each call of the same thread
+			for (String[] pair : PAIRS) {
+				metric.getSimilarity(pair[0], pair[1]);
+				assertSame(metric, StringMetrics.getMetric(method));
+			}
+		}
+		// semantic measures have no edit distance metric
+		assertNull(StringMetrics.getMetric(StringSimilarity.LIN));
+	}
+	
+	
+	@Test
+	public void testMetricConfinedToThread() throws Exception {
+		final AbstractStringMetric metric = StringMetrics.getMetric(StringSimilarity.MONGE_ELKAN);
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			AbstractStringMetric otherThreadMetric = pool.submit(new Callable<AbstractStringMetric>() {
+				@Override
+				public AbstractStringMetric call() {
+					AbstractStringMetric first = StringMetrics.getMetric(StringSimilarity.MONGE_ELKAN);
+					assertSame(first, StringMetrics.getMetric(StringSimilarity.MONGE_ELKAN));
+					return first;
+				}
+			}).get();
+			assertNotNull(otherThreadMetric);
+			assertTrue(metric != otherThreadMetric);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	
+	@Test
+	public void testSameScores(){
+		for (StringSimilarity method : METHODS) {
+			for (String[] pair : PAIRS) {
+				assertEquals(newMetric(method).getSimilarity(pair[0], pair[1]), 
+						StringMetrics.getMetric(method).getSimilarity(pair[0], pair[1]), 0);
+			}
+		}
+	}
+	
+	
+	private static AbstractStringMetric newMetric(StringSimilarity method){
+		switch (method) {
+		case JARO:
+			return new Jaro();
+		case JARO_WINKLER:
+			return new JaroWinkler();
+		case MONGE_ELKAN:
+			return new MongeElkan();
+		default:
+			return new Levenshtein();
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.lti.jawjaw.pobj.POS;
+import edu.cmu.lti.lexical_db.ILexicalDatabase;
+import edu.cmu.lti.lexical_db.NictWordNet;
+import edu.cmu.lti.lexical_db.data.Concept;
+import edu.cmu.lti.ws4j.RelatednessCalculator;
+import edu.cmu.lti.ws4j.impl.Lin;
+import edu.cmu.lti.ws4j.impl.Path;
+import edu.cmu.lti.ws4j.impl.WuPalmer;
+import edu.cmu.lti.ws4j.util.WS4JConfiguration;
+import fr.inria.wimmics.prissma.selection.utilities.SemanticRelatedness;
+
+/**
+ * Compares full and bounded evaluation of semantic string similarity 
+ * over real WordNet lookups. Synsets are resolved once, as in the Matcher,
+ * so that only relatedness computations are timed.
+ */
+public class TestSemanticRelatednessBound {
+
+	private static final int ITERATIONS = 20;
+	
+	private static final String[][] PAIRS = {
+		{"football", "soccer"},
+		{"cinema", "movie"},
+		{"cinema", "cinema"},
+		{"rock", "jazz"},
+		{"office", "home"},
+		{"car", "automobile"},
+		{"walk", "run"},
+		{"music", "music"},
+		{"computer", "programming"},
+		{"meeting", "conference"}
+	};
+	
+	
+	public static void main(String[] args) {
+		// same setting as the Matcher: only the most frequent sense of each word is used
+		WS4JConfiguration.getInstance().setMFS(true);
+		ILexicalDatabase db = new NictWordNet();
+		RelatednessCalculator[] rcs = {new Lin(db), new WuPalmer(db), new Path(db)};
+		for (RelatednessCalculator rc : rcs) {
+			List<List<List<Concept>>> synsets1 = new ArrayList<List<List<Concept>>>();
+			List<List<List<Concept>>> synsets2 = new ArrayList<List<List<Concept>>>();
+			for (String[] pair : PAIRS) {
+				synsets1.add(resolve(db, rc, pair[0], 0));
+				synsets2.add(resolve(db, rc, pair[1], 1));
+			}
+			
+			// warm up
+			run(rc, synsets1, synsets2, false, 1);
+			run(rc, synsets1, synsets2, true, 1);
+			
+			long start = System.nanoTime();
+			double full = run(rc, synsets1, synsets2, false, ITERATIONS);
+			long fullTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			double bounded = run(rc, synsets1, synsets2, true, ITERATIONS);
+			long boundedTime = System.nanoTime() - start;
+			
+			System.out.println(rc.getClass().getSimpleName() 
+					+ "\tfull: " + fullTime / 1000000 + " ms" 
+					+ "\tbounded: " + boundedTime / 1000000 + " ms"
+					+ "\tsame scores: " + (full == bounded));
+		}
+	}
+	
+	
+	private static List<List<Concept>> resolve(ILexicalDatabase db, RelatednessCalculator rc, String word, int side){
+		List<List<Concept>> synsets = new ArrayList<List<Concept>>();
+		for (POS[] posPair : rc.getPOSPairs())
+			synsets.add(new ArrayList<Concept>(db.getAllConcepts(word, posPair[side].toString())));
+		return synsets;
+	}
+	
+	
+	private static double run(RelatednessCalculator rc, List<List<List<Concept>>> synsets1, 
+			List<List<List<Concept>>> synsets2, boolean bounded, int iterations){
+		double sum = 0;
+		for (int i = 0; i < iterations; i++) {
+			for (int j = 0; j < synsets1.size(); j++)
+				sum += SemanticRelatedness.maxRelatedness(rc, synsets1.get(j), synsets2.get(j), bounded);
+		}
+		return sum;
+	}
+	
+}
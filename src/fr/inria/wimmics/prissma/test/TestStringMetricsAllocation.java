@@ -0,0 +1,123 @@
+/**
+ * PRISSMA is a presentation-level framework for Linked Data adaptation.
+ *
+ * Copyright (C) 2013 Luca Costabello, v1.0
+ * 
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the
+ * Free Software Foundation; either version 2 of the License, or (at your
+ * option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package fr.inria.wimmics.prissma.test;
+
+import java.lang.management.ManagementFactory;
+
+import uk.ac.shef.wit.simmetrics.similaritymetrics.AbstractStringMetric;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Jaro;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.JaroWinkler;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.Levenshtein;
+import uk.ac.shef.wit.simmetrics.similaritymetrics.MongeElkan;
+import fr.inria.wimmics.prissma.selection.entities.StringSimilarity;
+import fr.inria.wimmics.prissma.selection.utilities.StringMetrics;
+
+/**
+ * Compares time and allocated bytes of per-comparison metric instantiation
+ * against the cached metrics of StringMetrics.
+ */
+public class TestStringMetricsAllocation {
+
+	private static final int ITERATIONS = 200000;
+
+	private static final String[][] PAIRS = {
+		{"office", "home office"},
+		{"Eiffel Tower", "Tour Eiffel"},
+		{"meeting room", "conference room"},
+		{"jazz", "rock"},
+		{"walking", "running"}
+	};
+
+	private static final StringSimilarity[] METHODS = {
+		StringSimilarity.JARO, StringSimilarity.JARO_WINKLER,
+		StringSimilarity.MONGE_ELKAN, StringSimilarity.LEVENSTHEIN
+	};
+
+
+	public static void main(String[] args) {
+		for (StringSimilarity method : METHODS){
+			// warm up
+			runNew(method, ITERATIONS / 10);
+			runCached(method, ITERATIONS / 10);
+
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			double s1 = runNew(method, ITERATIONS);
+			long newTime = System.nanoTime() - start;
+			long newBytes = allocatedBytes() - bytes;
+
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			double s2 = runCached(method, ITERATIONS);
+			long cachedTime = System.nanoTime() - start;
+			long cachedBytes = allocatedBytes() - bytes;
+
+			System.out.println(method + "\tnew: " + newTime / 1000000 + " ms, " + newBytes / ITERATIONS + " B/op"
+					+ "\tcached: " + cachedTime / 1000000 + " ms, " + cachedBytes / ITERATIONS + " B/op"
+					+ "\tsame scores: " + (s1 == s2));
+		}
+	}
+
+
+	private static double runNew(StringSimilarity method, int iterations){
+		double sum = 0;
+		for (int i = 0; i < iterations; i++){
+			String[] pair = PAIRS[i % PAIRS.length];
+			sum += newMetric(method).getSimilarity(pair[0], pair[1]);
+		}
+		return sum;
+	}
+
+
+	private static double runCached(StringSimilarity method, int iterations){
+		double sum = 0;
+		for (int i = 0; i < iterations; i++){
+			String[] pair = PAIRS[i % PAIRS.length];
+			sum += StringMetrics.getMetric(method).getSimilarity(pair[0], pair[1]);
+		}
+		return sum;
+	}
+
+
+	private static AbstractStringMetric newMetric(StringSimilarity method){
+		switch (method) {
+		case JARO:
+			return new Jaro();
+		case JARO_WINKLER:
+			return new JaroWinkler();
+		case MONGE_ELKAN:
+			return new MongeElkan();
+		default:
+			return new Levenshtein();
+		}
+	}
+
+
+	/**
+	 * Bytes allocated so far by the current thread, or -1 if the JVM does not expose it.
+	 */
+	private static long allocatedBytes(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+}